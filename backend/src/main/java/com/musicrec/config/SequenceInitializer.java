@@ -0,0 +1,43 @@
+package com.musicrec.config;
+
+import com.musicrec.entity.Track;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks moved from IDENTITY to a pooled sequence. On databases created before
+ * that, track_seq starts at 1 while the table already holds ids, so move the
+ * sequence past the highest existing id once at startup.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SequenceInitializer {
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    // Only injected so that Hibernate has created/updated the schema first
+    private final EntityManagerFactory entityManagerFactory;
+    
+    @PostConstruct
+    public void alignTrackSequence() {
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM tracks", Long.class);
+            Long nextValue = jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'TRACK_SEQ'", Long.class);
+            
+            // The pooled optimizer hands out (value - allocationSize, value], so stay one block above max(id)
+            long safeStart = maxId + Track.ID_ALLOCATION_SIZE + 1;
+            if (nextValue != null && nextValue < safeStart) {
+                jdbcTemplate.execute("ALTER SEQUENCE track_seq RESTART WITH " + safeStart);
+                log.info("Moved track_seq from {} to {} (max track id {})", nextValue, safeStart, maxId);
+            }
+        } catch (Exception e) {
+            log.warn("Could not align track_seq with existing track ids: {}", e.getMessage());
+        }
+    }
+}
@@ -1,14 +1,109 @@
 package com.musicrec.config;
 
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+
+/**
+ * One shared WebClient per upstream, each with its own named connection pool
+ * (app.http.pools.&lt;name&gt;, falling back to the app.http defaults). Sockets are
+ * kept alive and reused across requests, so TLS handshakes are only paid when a
+ * pool grows; HTTPS upstreams negotiate HTTP/2 and responses are gzip-compressed.
+ * Pool metrics are published as reactor.netty.connection.provider.* tagged by pool name.
+ */
 @Configuration
+@Slf4j
 public class WebClientConfig {
     
+    private final Environment environment;
+    
+    public WebClientConfig(Environment environment) {
+        this.environment = environment;
+    }
+    
+    @Bean
+    public WebClient spotifyApiWebClient(WebClient.Builder builder,
+                                         @Value("${app.spotify.api-base-url}") String apiBaseUrl) {
+        return pooledClient(builder, "spotify-api", apiBaseUrl);
+    }
+    
+    @Bean
+    public WebClient spotifyAccountsWebClient(WebClient.Builder builder,
+                                              @Value("${app.spotify.auth-base-url}") String authBaseUrl) {
+        return pooledClient(builder, "spotify-accounts", authBaseUrl);
+    }
+    
+    /**
+     * Single Last.fm client shared by every caller
+     */
     @Bean
-    public WebClient.Builder webClientBuilder() {
-        return WebClient.builder();
+    public WebClient lastFmWebClient(WebClient.Builder builder,
+                                     @Value("${app.lastfm.api-base-url}") String apiBaseUrl) {
+        return pooledClient(builder, "lastfm", apiBaseUrl);
+    }
+    
+    private WebClient pooledClient(WebClient.Builder builder, String name, String baseUrl) {
+        // Sized per upstream in application.yml only
+        int maxConnections = setting(name, "max-connections", Integer.class);
+        ConnectionProvider provider = ConnectionProvider.builder(name)
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(setting(name, "pending-acquire-max-count", Integer.class, 500))
+            .pendingAcquireTimeout(setting(name, "pending-acquire-timeout", Duration.class, Duration.ofSeconds(30)))
+            // Below the idle timeouts of the upstreams' load balancers, so we never write to a closed socket
+            .maxIdleTime(setting(name, "max-idle-time", Duration.class, Duration.ofSeconds(30)))
+            // Recycled now and then so DNS changes are picked up
+            .maxLifeTime(setting(name, "max-life-time", Duration.class, Duration.ofMinutes(5)))
+            .evictInBackground(setting(name, "evict-interval", Duration.class, Duration.ofSeconds(30)))
+            .lifo()
+            .metrics(true)
+            .build();
+        
+        Duration connectTimeout = setting(name, "connect-timeout", Duration.class, Duration.ofSeconds(5));
+        HttpClient httpClient = HttpClient.create(provider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .responseTimeout(setting(name, "response-timeout", Duration.class, Duration.ofSeconds(10)))
+            .keepAlive(true)
+            .compress(true)
+            // Connect and TLS handshake timings; one tag value per pool keeps the cardinality down
+            .metrics(true, uri -> name);
+        
+        // HTTP/2 needs TLS (ALPN); plain HTTP upstreams stay on HTTP/1.1
+        if (baseUrl.startsWith("https:")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        
+        log.info("🌐 HTTP pool '{}' for {} (max {} connections)", name, baseUrl, maxConnections);
+        
+        return builder
+            .baseUrl(baseUrl)
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+    
+    /**
+     * app.http.pools.&lt;pool&gt;.&lt;key&gt;, else app.http.&lt;key&gt;; fails startup when neither is set
+     */
+    private <T> T setting(String pool, String key, Class<T> type) {
+        T value = environment.getProperty("app.http.pools." + pool + "." + key, type);
+        return value != null ? value : environment.getRequiredProperty("app.http." + key, type);
+    }
+    
+    /**
+     * app.http.pools.&lt;pool&gt;.&lt;key&gt;, else app.http.&lt;key&gt;, else the default
+     */
+    private <T> T setting(String pool, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("app.http.pools." + pool + "." + key, type);
+        return value != null ? value : environment.getProperty("app.http." + key, type, defaultValue);
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,9 @@ import com.musicrec.dto.ApiResponse;
 import com.musicrec.dto.AuthRequest;
 import com.musicrec.dto.AuthResponse;
 import com.musicrec.service.AuthService;
+import com.musicrec.service.RecommendationPrecomputer;
 import com.musicrec.service.RecommendationService;
+import com.musicrec.util.SessionManager;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +22,8 @@ public class AuthController {
     
     private final AuthService authService;
     private final RecommendationService recommendationService;
+    private final RecommendationPrecomputer recommendationPrecomputer;
+    private final SessionManager sessionManager;
     
     @PostMapping("/callback")
     public ResponseEntity<AuthResponse> handleCallback(@Valid @RequestBody AuthRequest request) {
@@ -38,6 +42,8 @@ public class AuthController {
         if (authentication != null) {
             String userId = (String) authentication.getPrincipal();
             recommendationService.clearCache(userId);
+            recommendationPrecomputer.forget(userId);
+            sessionManager.clearSession(userId);
             log.info("User logged out: {}", userId);
         }
         
@@ -0,0 +1,75 @@
+package com.musicrec.controller;
+
+import com.musicrec.dto.ExpandResponse;
+import com.musicrec.dto.JobResponse;
+import com.musicrec.dto.RecommendationResponse;
+import com.musicrec.service.JobService;
+import com.musicrec.service.MusicService;
+import com.musicrec.service.RecommendationPrecomputer;
+import com.musicrec.service.RecommendationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Job variants of /api/expand and /api/recommend: submit returns a job id
+ * immediately, GET /api/jobs/{id} reports progress and the result.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+@Slf4j
+public class JobController {
+    
+    private final JobService jobService;
+    private final MusicService musicService;
+    private final RecommendationService recommendationService;
+    private final RecommendationPrecomputer recommendationPrecomputer;
+    
+    @PostMapping("/expand")
+    public ResponseEntity<JobResponse> submitExpand(Authentication authentication) {
+        String userId = (String) authentication.getPrincipal();
+        log.info("Expand job request from user: {}", userId);
+        
+        JobResponse job = jobService.submit(userId, "expand", progress -> {
+            progress.accept("Syncing liked tracks from Spotify");
+            ExpandResponse response = musicService.expandDataset(userId, progress);
+            
+            // Same follow-up as POST /api/expand
+            recommendationService.clearCache(userId);
+            if (response.isSuccess()) {
+                recommendationPrecomputer.rebuild(userId);
+            }
+            
+            progress.accept(response.getMessage());
+            return response;
+        });
+        
+        return ResponseEntity.accepted().body(job);
+    }
+    
+    @PostMapping("/recommend")
+    public ResponseEntity<JobResponse> submitRecommend(Authentication authentication) {
+        String userId = (String) authentication.getPrincipal();
+        log.info("Recommendation job request from user: {}", userId);
+        
+        JobResponse job = jobService.submit(userId, "recommend", progress -> {
+            progress.accept("Building recommendations from Last.fm");
+            RecommendationResponse response = recommendationService.generateRecommendations(userId, progress);
+            recommendationPrecomputer.warmUp(userId);
+            
+            progress.accept(response.getMessage());
+            return response;
+        });
+        
+        return ResponseEntity.accepted().body(job);
+    }
+    
+    @GetMapping("/{jobId}")
+    public ResponseEntity<JobResponse> getJob(Authentication authentication, @PathVariable String jobId) {
+        String userId = (String) authentication.getPrincipal();
+        return ResponseEntity.ok(jobService.getJob(jobId, userId));
+    }
+}
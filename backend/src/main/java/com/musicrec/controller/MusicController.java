@@ -2,13 +2,19 @@ package com.musicrec.controller;
 
 import com.musicrec.dto.*;
 import com.musicrec.service.MusicService;
+import com.musicrec.service.RecommendationPrecomputer;
 import com.musicrec.service.RecommendationService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/api")
@@ -18,6 +24,7 @@ public class MusicController {
     
     private final MusicService musicService;
     private final RecommendationService recommendationService;
+    private final RecommendationPrecomputer recommendationPrecomputer;
     
     @PostMapping("/expand")
     public ResponseEntity<ExpandResponse> expandDataset(Authentication authentication) {
@@ -29,6 +36,11 @@ public class MusicController {
         // Clear recommendation cache after expansion
         recommendationService.clearCache(userId);
         
+        // Liked tracks changed: rebuild the first batches in the background
+        if (response.isSuccess()) {
+            recommendationPrecomputer.rebuild(userId);
+        }
+        
         return ResponseEntity.ok(response);
     }
     
@@ -45,13 +57,29 @@ public class MusicController {
         log.info("Recommendation request from user: {}", userId);
         
         RecommendationResponse response = recommendationService.generateRecommendations(userId);
+        recommendationPrecomputer.warmUp(userId);
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Same as /recommend, but streamed as server-sent events while the batch is being built.
+     * "track" events are per-seed previews; the final "done" event carries the same batch,
+     * in the same order, as /recommend would return.
+     */
+    @PostMapping(value = "/recommend/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamRecommendations(Authentication authentication) {
+        String userId = (String) authentication.getPrincipal();
+        log.info("Streaming recommendation request from user: {}", userId);
+        
+        return recommendationService.streamRecommendations(userId)
+            .doOnComplete(() -> recommendationPrecomputer.warmUp(userId));
+    }
+    
     @PostMapping("/recommend/next")
     public ResponseEntity<RecommendationResponse> getNextRecommendations(Authentication authentication) {
         String userId = (String) authentication.getPrincipal();
         RecommendationResponse response = recommendationService.getNextBatch(userId);
+        recommendationPrecomputer.warmUp(userId);
         return ResponseEntity.ok(response);
     }
     
@@ -59,9 +87,23 @@ public class MusicController {
     public ResponseEntity<RecommendationResponse> getPreviousRecommendations(Authentication authentication) {
         String userId = (String) authentication.getPrincipal();
         RecommendationResponse response = recommendationService.getPreviousBatch(userId);
+        recommendationPrecomputer.warmUp(userId);
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Tracks most similar to one of the user's tracks, from the local similarity index
+     */
+    @GetMapping("/tracks/{trackId}/similar")
+    public ResponseEntity<List<TrackDto>> getSimilarTracks(
+            Authentication authentication,
+            @PathVariable Long trackId,
+            @RequestParam(defaultValue = "20") int limit) {
+        
+        String userId = (String) authentication.getPrincipal();
+        return ResponseEntity.ok(recommendationService.findSimilarTracks(userId, trackId, limit));
+    }
+    
     @PostMapping("/feedback")
     public ResponseEntity<ApiResponse> submitFeedback(
             Authentication authentication,
@@ -70,8 +112,10 @@ public class MusicController {
         String userId = (String) authentication.getPrincipal();
         ApiResponse response = musicService.saveFeedback(userId, request);
         
-        // Clear cache to trigger re-ranking
+        // Clear cache to trigger re-ranking; precomputed batches predate the feedback, so
+        // they are dropped too and the next page is built (and warmed up) from the new model
         recommendationService.clearCache(userId);
+        recommendationService.discardPrecomputed(userId);
         
         return ResponseEntity.ok(response);
     }
@@ -0,0 +1,20 @@
+package com.musicrec.dto;
+
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobResponse {
+    private String id;
+    private String type; // "expand" or "recommend"
+    private String status; // "queued", "running", "succeeded" or "failed"
+    private String progress;
+    private Object result; // ExpandResponse or RecommendationResponse once succeeded
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
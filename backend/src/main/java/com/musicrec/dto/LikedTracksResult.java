@@ -0,0 +1,16 @@
+package com.musicrec.dto;
+
+import lombok.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LikedTracksResult {
+    private List<SpotifyTrackDto> tracks; // Empty when pages were streamed to a handler
+    private int total; // Library size reported by Spotify
+    private boolean complete; // False if paging stopped early on an error
+    private LocalDateTime newestAddedAt; // Newest added_at seen, where the next incremental sync starts
+}
@@ -4,7 +4,7 @@ import lombok.*;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class RecommendationResponse {
@@ -0,0 +1,14 @@
+package com.musicrec.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+
+/**
+ * GET /artists?ids=..., only the genres are read
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SpotifyArtistsResponse(List<Artist> artists) {
+    
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Artist(String id, List<String> genres) {}
+}
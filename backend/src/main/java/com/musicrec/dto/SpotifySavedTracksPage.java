@@ -0,0 +1,29 @@
+package com.musicrec.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * One page of GET /me/tracks, reduced to the fields we store.
+ * Everything else (markets, previews, external ids...) is skipped by the
+ * parser instead of being built into a Map tree.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SpotifySavedTracksPage(List<Item> items, int total, String next) {
+    
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Item(@JsonProperty("added_at") String addedAt, Track track) {}
+    
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Track(String id, String name, List<Artist> artists, Album album) {}
+    
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Artist(String id, String name) {}
+    
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Album(String name, @JsonProperty("release_date") String releaseDate, List<Image> images) {}
+    
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Image(String url) {}
+}
@@ -1,8 +1,7 @@
 package com.musicrec.dto;
 
-import lombok.Data;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import java.util.List;
+import lombok.*;
+import java.time.LocalDateTime;
 
 @Data
 @Builder
@@ -17,4 +16,5 @@ public class SpotifyTrackDto {
     private String year;
     private String albumImage;
     private String tags;
-}
\ No newline at end of file
+    private LocalDateTime addedAt; // When the user liked it, for liked tracks
+}
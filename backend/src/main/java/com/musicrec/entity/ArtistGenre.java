@@ -0,0 +1,33 @@
+package com.musicrec.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * Spotify genres per artist, shared by every user. Tracks look their
+ * genres up here by artistId instead of each row carrying a copy.
+ */
+@Entity
+@Table(name = "artist_genre", indexes = {
+    @Index(name = "idx_artist_genre_refreshed", columnList = "refreshedAt")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArtistGenre {
+    
+    // Spotify artist id
+    @Id
+    @Column(length = 64)
+    private String artistId;
+    
+    // Comma-joined, lower-case; empty when Spotify knows no genres for the artist
+    @Column(nullable = false, length = 1000)
+    private String genres;
+    
+    @Column(nullable = false)
+    private LocalDateTime refreshedAt;
+}
@@ -0,0 +1,54 @@
+package com.musicrec.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * One edge of the local artist-similarity graph, as answered by Last.fm
+ * artist.getsimilar for the source artist. All edges of a source are
+ * replaced together when it is expanded again.
+ */
+@Entity
+@Table(name = "artist_similarity")
+@IdClass(ArtistSimilarity.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArtistSimilarity {
+    
+    // Normalized artist names
+    @Id
+    @Column(length = 300)
+    private String sourceKey;
+    
+    @Id
+    @Column(length = 300)
+    private String targetKey;
+    
+    // Display name of the source artist, as the seed track spells it
+    @Column(length = 300)
+    private String sourceName;
+    
+    // Display name of the similar artist, as Last.fm spells it
+    @Column(nullable = false, length = 300)
+    private String targetName;
+    
+    // (0, 1], higher for artists Last.fm ranks as more similar
+    @Column(nullable = false)
+    private float weight;
+    
+    @Column(nullable = false)
+    private LocalDateTime expandedAt;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String sourceKey;
+        private String targetKey;
+    }
+}
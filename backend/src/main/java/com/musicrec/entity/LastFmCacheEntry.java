@@ -0,0 +1,38 @@
+package com.musicrec.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "lastfm_cache", indexes = {
+    @Index(name = "idx_lastfm_cache_expires", columnList = "expiresAt")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LastFmCacheEntry {
+    
+    // "<method>:<normalized artist or tag>"
+    @Id
+    @Column(length = 400)
+    private String cacheKey;
+    
+    // JSON-encoded response, already parsed into our own shape
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+    
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        if (createdAt == null) createdAt = LocalDateTime.now();
+    }
+}
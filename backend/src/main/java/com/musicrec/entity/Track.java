@@ -9,16 +9,26 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "tracks", indexes = {
-    @Index(name = "idx_user_source", columnList = "userId,source"),
-    @Index(name = "idx_user_id", columnList = "userId")
+    // Covers the stats aggregate (counts per source and distinct artists) as well as lookups by source
+    @Index(name = "idx_user_source_artist", columnList = "userId,source,artist"),
+    @Index(name = "idx_user_id", columnList = "userId"),
+    // Change scans of the track similarity index and the recommendation retention job
+    @Index(name = "idx_created_at", columnList = "createdAt"),
+    @Index(name = "uk_user_artist_track", columnList = "userId,artistKey,trackKey", unique = true)
 })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Track {
     
+    // Ids per track_seq value. Hibernate's pooled optimizer, RecommendationWriter and
+    // SequenceInitializer all hand out (value - ID_ALLOCATION_SIZE, value], so they must agree
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
+    // Pooled sequence instead of IDENTITY so Hibernate can batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "track_seq")
+    @SequenceGenerator(name = "track_seq", sequenceName = "track_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @Column(nullable = false)
@@ -48,10 +58,18 @@ public class Track {
     @Column(nullable = false)
     private String source; // "spotify_liked", "artist_similarity", "genre_similarity"
     
+    // When the user liked this track on Spotify (liked tracks only)
+    private LocalDateTime addedAt;
+    
     // Seeds for recommendations
     private String artistSeed; // Which artist led to this recommendation
     private String genreSeed; // Which genre led to this recommendation
     
+    // Normalized artist/track name of recommendations, unique per user so a track that is
+    // recommended again reuses its row (null on liked tracks)
+    private String artistKey;
+    private String trackKey;
+    
     @Column(nullable = false)
     private LocalDateTime createdAt;
     
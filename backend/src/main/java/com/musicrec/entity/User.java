@@ -35,6 +35,13 @@ public class User {
     
     private LocalDateTime tokenExpiry;
     
+    // Newest Spotify added_at already stored; incremental sync stops paging here
+    private LocalDateTime likedTracksSyncedUntil;
+    
+    // Items Spotify counts in the library that are not stored (local files, unavailable or
+    // incomplete tracks), as of the last complete full sync
+    private Integer likedTracksUnstored;
+    
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
     
@@ -19,15 +19,17 @@ public class UserSession {
     @Column(nullable = false)
     private String tokenHash;
     
+    // Set when the session is created, then moved by SessionManager touches; token refreshes leave it alone
     @Column(nullable = false)
-    private LocalDateTime lastSeen = LocalDateTime.now();
+    private LocalDateTime lastSeen;
     
     @Column(length = 20)
     private String sessionId;
     
     @PrePersist
-    @PreUpdate
-    protected void onUpdate() {
-        lastSeen = LocalDateTime.now();
+    protected void onCreate() {
+        if (lastSeen == null) {
+            lastSeen = LocalDateTime.now();
+        }
     }
 }
\ No newline at end of file
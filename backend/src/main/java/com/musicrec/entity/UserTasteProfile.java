@@ -0,0 +1,29 @@
+package com.musicrec.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * Per-user weights for artists, genres/tags and decades, see TasteProfileService
+ */
+@Entity
+@Table(name = "user_taste_profile")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserTasteProfile {
+    
+    @Id
+    private String userId;
+    
+    // Binary-encoded feature weights
+    @Lob
+    @Column(nullable = false)
+    private byte[] weights;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
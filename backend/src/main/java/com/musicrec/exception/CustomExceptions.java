@@ -37,4 +37,10 @@ public class CustomExceptions {
             super(message);
         }
     }
+    
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String message) {
+            super(message);
+        }
+    }
 }
\ No newline at end of file
@@ -62,6 +62,15 @@ public class GlobalExceptionHandler {
             .body(ApiResponse.error(ex.getMessage()));
     }
     
+    @ExceptionHandler(CustomExceptions.NotFoundException.class)
+    public ResponseEntity<ApiResponse> handleNotFound(
+            CustomExceptions.NotFoundException ex, WebRequest request) {
+        log.warn("Not found: {}", ex.getMessage());
+        return ResponseEntity
+            .status(HttpStatus.NOT_FOUND)
+            .body(ApiResponse.error(ex.getMessage()));
+    }
+    
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, String>> handleValidationErrors(
             MethodArgumentNotValidException ex) {
@@ -0,0 +1,9 @@
+package com.musicrec.repository;
+
+import com.musicrec.entity.ArtistGenre;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ArtistGenreRepository extends JpaRepository<ArtistGenre, String> {
+}
@@ -1,7 +1,9 @@
 package com.musicrec.repository;
 
 import com.musicrec.entity.Feedback;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -29,4 +31,10 @@ public interface FeedbackRepository extends JpaRepository<Feedback, Long> {
      * Delete all feedback for a user
      */
     void deleteByUserId(String userId);
+    
+    /**
+     * Ids of feedback whose track no longer exists, one chunk at a time
+     */
+    @Query("SELECT f.id FROM Feedback f WHERE NOT EXISTS (SELECT t.id FROM Track t WHERE t.id = f.trackId)")
+    List<Long> findOrphanedIds(Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.musicrec.repository;
+
+import com.musicrec.entity.LastFmCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+
+@Repository
+public interface LastFmCacheRepository extends JpaRepository<LastFmCacheEntry, String> {
+    
+    @Modifying
+    @Query("DELETE FROM LastFmCacheEntry e WHERE e.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -1,12 +1,16 @@
 package com.musicrec.repository;
 
 import com.musicrec.entity.Track;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Repository
 public interface TrackRepository extends JpaRepository<Track, Long> {
@@ -17,12 +21,47 @@ public interface TrackRepository extends JpaRepository<Track, Long> {
      */
     List<Track> findByUserIdAndSource(String userId, String source);
     
+    /**
+     * Liked tracks newest first, the order Spotify shows them in
+     */
+    List<Track> findByUserIdAndSourceOrderByAddedAtDescIdAsc(String userId, String source);
+    
+    /**
+     * Spotify ids already stored for a user and source
+     */
+    @Query("SELECT t.spotifyId FROM Track t WHERE t.userId = :userId AND t.source = :source AND t.spotifyId IS NOT NULL")
+    Set<String> findSpotifyIdsByUserIdAndSource(@Param("userId") String userId, @Param("source") String source);
+    
+    /**
+     * Recommendations of a user by normalized track name, see RecommendationWriter
+     */
+    List<Track> findByUserIdAndTrackKeyIn(String userId, Collection<String> trackKeys);
+    
+    /**
+     * Id, artist key and track key of the same rows, without loading the entities
+     */
+    @Query("SELECT t.id, t.artistKey, t.trackKey FROM Track t WHERE t.userId = :userId AND t.trackKey IN :trackKeys")
+    List<Object[]> findIdsByUserIdAndTrackKeyIn(@Param("userId") String userId, @Param("trackKeys") Collection<String> trackKeys);
+    
     /**
      * Delete all tracks for a user with a specific source
      * Used to clear old data before refreshing
      */
     void deleteByUserIdAndSource(String userId, String source);
     
+    /**
+     * Ids of recommendations created before the cutoff that have no feedback, one chunk at a time
+     */
+    @Query("SELECT t.id FROM Track t WHERE t.source <> 'spotify_liked' AND t.createdAt < :cutoff " +
+           "AND NOT EXISTS (SELECT f.id FROM Feedback f WHERE f.trackId = t.id)")
+    List<Long> findExpiredRecommendationIds(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+    
+    /**
+     * Users owning any of the given tracks
+     */
+    @Query("SELECT DISTINCT t.userId FROM Track t WHERE t.id IN :ids")
+    List<String> findUserIdsByIdIn(@Param("ids") Collection<Long> ids);
+    
     /**
      * Count tracks by user and source
      */
@@ -2,11 +2,21 @@ package com.musicrec.repository;
 
 import com.musicrec.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findBySpotifyId(String spotifyId);
     boolean existsBySpotifyId(String spotifyId);
+    
+    // Users whose session was used since activeSince and whose access token expires before expiresBefore
+    @Query("SELECT u FROM User u, UserSession s WHERE s.userId = u.spotifyId AND s.lastSeen > :activeSince " +
+           "AND u.refreshToken IS NOT NULL AND u.tokenExpiry < :expiresBefore")
+    List<User> findActiveWithTokenExpiringBefore(@Param("expiresBefore") LocalDateTime expiresBefore,
+                                                 @Param("activeSince") LocalDateTime activeSince);
 }
\ No newline at end of file
@@ -7,11 +7,23 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Repository
 public interface UserSessionRepository extends JpaRepository<UserSession, String> {
     
+    List<UserSession> findByLastSeenAfter(LocalDateTime since);
+    
     @Modifying
     @Query("DELETE FROM UserSession s WHERE s.lastSeen < :cutoffTime")
     int deleteOldSessions(@Param("cutoffTime") LocalDateTime cutoffTime);
+    
+    // Token changes leave lastSeen alone, so a refresh does not count as activity
+    @Modifying
+    @Query("UPDATE UserSession s SET s.tokenHash = :tokenHash WHERE s.userId = :userId")
+    int updateTokenHash(@Param("userId") String userId, @Param("tokenHash") String tokenHash);
+    
+    @Modifying
+    @Query("UPDATE UserSession s SET s.lastSeen = :lastSeen WHERE s.userId = :userId")
+    int updateLastSeen(@Param("userId") String userId, @Param("lastSeen") LocalDateTime lastSeen);
 }
\ No newline at end of file
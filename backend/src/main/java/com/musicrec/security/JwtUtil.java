@@ -1,14 +1,22 @@
 package com.musicrec.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
@@ -20,9 +28,41 @@ public class JwtUtil {
     @Value("${app.jwt.expiration}")
     private long expiration;
     
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${app.jwt.claims-cache-size:10000}")
+    private long claimsCacheSize;
+    
+    // Built once: the key and parser are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+    
+    // Verified tokens by SHA-256 digest; each entry expires with its token's exp
+    private Cache<String, VerifiedToken> verified;
+    
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser()
+            .verifyWith(signingKey)
+            .build();
+        verified = Caffeine.newBuilder()
+            .maximumSize(claimsCacheSize)
+            .expireAfter(new Expiry<String, VerifiedToken>() {
+                @Override
+                public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                    return token.remainingNanos();
+                }
+                
+                @Override
+                public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                    return token.remainingNanos();
+                }
+                
+                @Override
+                public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
     }
     
     public String generateToken(String userId) {
@@ -33,30 +73,58 @@ public class JwtUtil {
             .subject(userId)
             .issuedAt(now)
             .expiration(expiryDate)
-            .signWith(getSigningKey())
+            .signWith(signingKey)
             .compact();
     }
     
-    public String getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-            .verifyWith(getSigningKey())
-            .build()
-            .parseSignedClaims(token)
-            .getPayload();
+    /**
+     * User id of a valid token, or null. The signature is only checked the first
+     * time a token is seen; after that it is one digest and one cache lookup
+     * until the token expires.
+     */
+    public String getVerifiedUserId(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verified.getIfPresent(digest);
+        if (cached != null && cached.remainingNanos() > 0) {
+            return cached.userId();
+        }
         
-        return claims.getSubject();
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            Date expiresAt = claims.getExpiration();
+            if (expiresAt != null) {
+                verified.put(digest, new VerifiedToken(claims.getSubject(), expiresAt.getTime()));
+            }
+            return claims.getSubject();
+        } catch (JwtException | IllegalArgumentException e) {
+            log.error("Invalid JWT token: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    public String getUserIdFromToken(String token) {
+        return parser.parseSignedClaims(token)
+            .getPayload()
+            .getSubject();
     }
     
     public boolean validateToken(String token) {
+        return getVerifiedUserId(token) != null;
+    }
+    
+    private static String digest(String token) {
         try {
-            Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            log.error("Invalid JWT token: {}", e.getMessage());
-            return false;
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private record VerifiedToken(String userId, long expiresAtMillis) {
+        
+        long remainingNanos() {
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(expiresAtMillis - System.currentTimeMillis()));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package com.musicrec.service;
+
+import com.musicrec.entity.ArtistGenre;
+import com.musicrec.repository.ArtistGenreRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Global artist -> genres catalog. Spotify is only asked about artists that
+ * are not in the catalog yet or whose entry is older than the refresh TTL,
+ * no matter how many users have liked tracks by them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ArtistGenreService {
+    
+    private final ArtistGenreRepository artistGenreRepository;
+    private final SpotifyService spotifyService;
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${app.spotify.artist-genre-ttl:30d}")
+    private Duration refreshTtl;
+    
+    /**
+     * Comma-joined genres for each known artist id. Missing and stale entries
+     * are refreshed from Spotify first; if that fails, stale entries are still used.
+     */
+    public Map<String, String> getGenres(Collection<String> artistIds, String userId) {
+        Set<String> ids = new HashSet<>(artistIds);
+        ids.removeIf(id -> id == null || id.isEmpty());
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        Map<String, String> genres = new HashMap<>();
+        LocalDateTime staleBefore = LocalDateTime.now().minus(refreshTtl);
+        List<String> toFetch = new ArrayList<>(ids);
+        
+        for (ArtistGenre entry : artistGenreRepository.findAllById(ids)) {
+            genres.put(entry.getArtistId(), entry.getGenres());
+            if (entry.getRefreshedAt().isAfter(staleBefore)) {
+                toFetch.remove(entry.getArtistId());
+            }
+        }
+        
+        if (toFetch.isEmpty()) {
+            return genres;
+        }
+        
+        log.info("🎸 Fetching genres for {} of {} artists (rest served from catalog)...", toFetch.size(), ids.size());
+        
+        try {
+            Map<String, List<String>> fetched = spotifyService.getGenresForArtists(toFetch, userId);
+            Map<String, String> refreshed = new HashMap<>();
+            fetched.forEach((artistId, artistGenres) -> refreshed.put(artistId, String.join(", ", artistGenres)));
+            
+            upsert(refreshed);
+            genres.putAll(refreshed);
+        } catch (Exception e) {
+            log.warn("Failed to refresh artist genres: {}", e.getMessage());
+            // Continue with what the catalog has - not critical
+        }
+        
+        return genres;
+    }
+    
+    /**
+     * MERGE so that two users refreshing the same artist at once cannot collide on the key
+     */
+    private void upsert(Map<String, String> genresByArtist) {
+        if (genresByArtist.isEmpty()) {
+            return;
+        }
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>();
+        genresByArtist.forEach((artistId, genres) ->
+            rows.add(new Object[] { artistId, genres.toLowerCase(Locale.ROOT), now }));
+        
+        jdbcTemplate.batchUpdate(
+            "MERGE INTO artist_genre (artist_id, genres, refreshed_at) KEY (artist_id) VALUES (?, ?, ?)", rows);
+    }
+}
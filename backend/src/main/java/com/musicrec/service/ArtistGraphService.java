@@ -0,0 +1,347 @@
+package com.musicrec.service;
+
+import com.musicrec.util.StringUtil;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local weighted artist-similarity graph built from every Last.fm
+ * artist.getsimilar answer. Artists that were already expanded are answered
+ * with a personalized PageRank (random walks with restart) over the graph, so
+ * Last.fm is only asked about artists on the frontier or with stale edges.
+ *
+ * New expansions are usable right away and are written to the
+ * artist_similarity table and folded into the in-memory CSR snapshot on a
+ * schedule, so recording never touches the database on a Reactor thread.
+ */
+@Service
+@Slf4j
+public class ArtistGraphService {
+    
+    private static final String INSERT_SQL =
+        "INSERT INTO artist_similarity (source_key, source_name, target_key, target_name, weight, expanded_at) VALUES (?, ?, ?, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration refreshTtl;
+    private final int walks;
+    private final double restartProbability;
+    
+    // Expansions recorded since the last flush, by normalized source artist
+    private final Map<String, Expansion> pending = new ConcurrentHashMap<>();
+    private volatile Graph graph = Graph.EMPTY;
+    
+    public ArtistGraphService(JdbcTemplate jdbcTemplate,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry,
+                              // Only injected so that Hibernate has created/updated the schema first
+                              EntityManagerFactory entityManagerFactory,
+                              @Value("${app.recommendation.graph.refresh-ttl:30d}") Duration refreshTtl,
+                              @Value("${app.recommendation.graph.walks:1000}") int walks,
+                              @Value("${app.recommendation.graph.restart-probability:0.15}") double restartProbability) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.refreshTtl = refreshTtl;
+        this.walks = walks;
+        this.restartProbability = restartProbability;
+        Gauge.builder("artist_graph.nodes", this, service -> service.graph.names().length)
+            .description("Artists in the local similarity graph")
+            .register(meterRegistry);
+        Gauge.builder("artist_graph.edges", this, service -> service.graph.targets().length)
+            .description("Edges in the local similarity graph")
+            .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void load() {
+        try {
+            Map<String, Expansion> adjacency = new HashMap<>();
+            jdbcTemplate.query(
+                "SELECT source_key, source_name, target_key, target_name, weight, expanded_at FROM artist_similarity ORDER BY source_key, weight DESC",
+                rs -> {
+                    LocalDateTime expandedAt = rs.getTimestamp(6).toLocalDateTime();
+                    String sourceName = rs.getString(2);
+                    Expansion expansion = adjacency.computeIfAbsent(rs.getString(1),
+                        key -> new Expansion(sourceName != null ? sourceName : key, new ArrayList<>(), expandedAt));
+                    expansion.edges().add(new Edge(rs.getString(3), rs.getString(4), rs.getFloat(5)));
+                });
+            graph = Graph.build(adjacency);
+            log.info("🕸️ Loaded artist graph: {} artists, {} edges", graph.names().length, graph.targets().length);
+        } catch (Exception e) {
+            log.warn("Could not load artist graph, starting empty: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * True if the artist's neighbours are known and fresh enough to skip Last.fm
+     */
+    public boolean isExpanded(String artist) {
+        String key = StringUtil.normalize(artist);
+        if (pending.containsKey(key)) {
+            return true;
+        }
+        LocalDateTime expandedAt = graph.expandedAt(key);
+        return expandedAt != null && expandedAt.isAfter(LocalDateTime.now().minus(refreshTtl));
+    }
+    
+    /**
+     * Most similar artists by personalized PageRank from the given artist, best first.
+     * Deterministic per graph snapshot, so the same seed gives the same answer.
+     */
+    public List<String> similarArtists(String artist, int limit) {
+        String key = StringUtil.normalize(artist);
+        
+        // Not folded into the snapshot yet: its direct neighbours are the best we have
+        Expansion recent = pending.get(key);
+        if (recent != null) {
+            return recent.edges().stream().limit(limit).map(Edge::targetName).toList();
+        }
+        
+        return graph.personalizedPageRank(key, limit, walks, restartProbability);
+    }
+    
+    /**
+     * Remember a Last.fm artist.getsimilar answer, most similar first. Never blocks.
+     */
+    public void record(String artist, List<String> similarArtists) {
+        String key = StringUtil.normalize(artist);
+        if (key.isEmpty() || similarArtists.isEmpty()) {
+            return;
+        }
+        
+        List<Edge> edges = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < similarArtists.size(); i++) {
+            String name = similarArtists.get(i);
+            String targetKey = StringUtil.normalize(name);
+            if (!targetKey.isEmpty() && !targetKey.equals(key) && seen.add(targetKey)) {
+                // Rank-based weight: the first answer counts fully, the last 1/n
+                edges.add(new Edge(targetKey, name, 1f - (float) i / similarArtists.size()));
+            }
+        }
+        if (!edges.isEmpty()) {
+            pending.put(key, new Expansion(artist, edges, LocalDateTime.now()));
+        }
+    }
+    
+    /**
+     * Persist pending expansions and rebuild the CSR snapshot with them
+     */
+    @Scheduled(fixedDelayString = "${app.recommendation.graph.flush-interval-ms:30000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        Map<String, Expansion> updates = new HashMap<>();
+        for (String key : new ArrayList<>(pending.keySet())) {
+            Expansion expansion = pending.get(key);
+            if (expansion != null) {
+                updates.put(key, expansion);
+            }
+        }
+        
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate("DELETE FROM artist_similarity WHERE source_key = ?",
+                    updates.keySet().stream().map(key -> new Object[] { key }).toList());
+                
+                List<Object[]> rows = new ArrayList<>();
+                updates.forEach((source, expansion) -> {
+                    Timestamp expandedAt = Timestamp.valueOf(expansion.expandedAt());
+                    for (Edge edge : expansion.edges()) {
+                        rows.add(new Object[] { source, expansion.sourceName(), edge.targetKey(), edge.targetName(),
+                            edge.weight(), expandedAt });
+                    }
+                });
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            });
+        } catch (Exception e) {
+            // Keep them pending and try again on the next run
+            log.warn("Failed to persist artist graph edges: {}", e.getMessage());
+            return;
+        }
+        
+        Map<String, Expansion> adjacency = graph.toAdjacency();
+        adjacency.putAll(updates);
+        graph = Graph.build(adjacency);
+        
+        // Only drop what was written; a newer expansion recorded meanwhile stays pending
+        updates.forEach(pending::remove);
+        log.info("🕸️ Added {} expansions to artist graph ({} artists, {} edges)",
+            updates.size(), graph.names().length, graph.targets().length);
+    }
+    
+    private record Edge(String targetKey, String targetName, float weight) {}
+    
+    private record Expansion(String sourceName, List<Edge> edges, LocalDateTime expandedAt) {}
+    
+    /**
+     * Immutable compressed-sparse-row adjacency. Node i's edges are
+     * targets[offsets[i] .. offsets[i + 1]), with cumulative weights per row
+     * so a weighted step is one binary search.
+     */
+    private record Graph(Map<String, Integer> ids,
+                         String[] keys,
+                         String[] names,
+                         LocalDateTime[] expandedAt,
+                         int[] offsets,
+                         int[] targets,
+                         float[] weights,
+                         float[] cumulative) {
+        
+        static final Graph EMPTY = build(Collections.emptyMap());
+        
+        static Graph build(Map<String, Expansion> adjacency) {
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> keys = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            
+            // Sources first, in a stable order, then targets that were never expanded
+            List<String> sources = new ArrayList<>(adjacency.keySet());
+            Collections.sort(sources);
+            for (String source : sources) {
+                ids.put(source, keys.size());
+                keys.add(source);
+                names.add(adjacency.get(source).sourceName());
+            }
+            int edgeCount = 0;
+            for (String source : sources) {
+                for (Edge edge : adjacency.get(source).edges()) {
+                    edgeCount++;
+                    Integer id = ids.get(edge.targetKey());
+                    if (id == null) {
+                        ids.put(edge.targetKey(), keys.size());
+                        keys.add(edge.targetKey());
+                        names.add(edge.targetName());
+                    } else {
+                        names.set(id, edge.targetName());
+                    }
+                }
+            }
+            
+            int nodeCount = keys.size();
+            LocalDateTime[] expandedAt = new LocalDateTime[nodeCount];
+            int[] offsets = new int[nodeCount + 1];
+            int[] targets = new int[edgeCount];
+            float[] weights = new float[edgeCount];
+            float[] cumulative = new float[edgeCount];
+            
+            int e = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                offsets[node] = e;
+                Expansion expansion = node < sources.size() ? adjacency.get(keys.get(node)) : null;
+                if (expansion == null) {
+                    continue;
+                }
+                expandedAt[node] = expansion.expandedAt();
+                float running = 0;
+                for (Edge edge : expansion.edges()) {
+                    targets[e] = ids.get(edge.targetKey());
+                    weights[e] = edge.weight();
+                    running += edge.weight();
+                    cumulative[e] = running;
+                    e++;
+                }
+            }
+            offsets[nodeCount] = e;
+            
+            return new Graph(ids, keys.toArray(new String[0]), names.toArray(new String[0]),
+                expandedAt, offsets, targets, weights, cumulative);
+        }
+        
+        LocalDateTime expandedAt(String key) {
+            Integer id = ids.get(key);
+            return id != null ? expandedAt[id] : null;
+        }
+        
+        Map<String, Expansion> toAdjacency() {
+            Map<String, Expansion> adjacency = new HashMap<>();
+            for (int node = 0; node < keys.length; node++) {
+                if (expandedAt[node] == null) {
+                    continue;
+                }
+                List<Edge> edges = new ArrayList<>(offsets[node + 1] - offsets[node]);
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    edges.add(new Edge(keys[targets[e]], names[targets[e]], weights[e]));
+                }
+                adjacency.put(keys[node], new Expansion(names[node], edges, expandedAt[node]));
+            }
+            return adjacency;
+        }
+        
+        /**
+         * Monte Carlo personalized PageRank: count where walks from the source
+         * land, restarting with the given probability after every step
+         */
+        List<String> personalizedPageRank(String key, int limit, int walks, double restartProbability) {
+            Integer source = ids.get(key);
+            if (source == null || offsets[source] == offsets[source + 1]) {
+                return Collections.emptyList();
+            }
+            
+            SplittableRandom random = new SplittableRandom(key.hashCode());
+            int[] visits = new int[keys.length];
+            for (int walk = 0; walk < walks; walk++) {
+                int node = source;
+                do {
+                    int start = offsets[node];
+                    int end = offsets[node + 1];
+                    if (start == end) {
+                        break;
+                    }
+                    node = targets[step(start, end, random.nextDouble() * cumulative[end - 1])];
+                    visits[node]++;
+                } while (random.nextDouble() >= restartProbability);
+            }
+            visits[source] = 0;
+            
+            // Pack (visits, -node) so one primitive sort gives most visited first, ties by node order
+            long[] ranked = new long[keys.length];
+            int n = 0;
+            for (int node = 0; node < visits.length; node++) {
+                if (visits[node] > 0) {
+                    ranked[n++] = ((long) visits[node] << 32) | (Integer.MAX_VALUE - node);
+                }
+            }
+            Arrays.sort(ranked, 0, n);
+            
+            List<String> result = new ArrayList<>(Math.min(limit, n));
+            for (int i = n - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(names[Integer.MAX_VALUE - (int) ranked[i]]);
+            }
+            return result;
+        }
+        
+        /**
+         * First edge in [start, end) whose cumulative weight exceeds r
+         */
+        private int step(int start, int end, double r) {
+            int lo = start;
+            int hi = end - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] > r) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+}
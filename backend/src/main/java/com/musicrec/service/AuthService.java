@@ -64,7 +64,7 @@ public class AuthService {
         userRepository.save(user);
         
         // Create session
-        sessionManager.validateSession(spotifyId, accessToken);
+        sessionManager.setTokens(spotifyId, accessToken, refreshToken, user.getTokenExpiry());
         
         // Generate JWT
         String jwtToken = jwtUtil.generateToken(spotifyId);
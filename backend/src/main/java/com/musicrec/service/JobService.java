@@ -0,0 +1,160 @@
+package com.musicrec.service;
+
+import com.musicrec.dto.JobResponse;
+import com.musicrec.exception.CustomExceptions;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Long-running work (Spotify sync, Last.fm crawl) as pollable jobs, so the
+ * HTTP request returns a job id right away instead of holding a Tomcat thread.
+ * A user has at most one queued or running job per type: submitting again
+ * returns the existing job, so client retries never start a second crawl.
+ */
+@Service
+@Slf4j
+public class JobService {
+    
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    
+    // "<userId>:<type>" -> id of the job that is queued or running
+    private final Map<String, String> activeJobs = new ConcurrentHashMap<>();
+    
+    private final ThreadPoolTaskExecutor executor;
+    private final Duration retention;
+    
+    public JobService(@Value("${app.jobs.max-concurrent:4}") int maxConcurrent,
+                      @Value("${app.jobs.queue-capacity:50}") int queueCapacity,
+                      @Value("${app.jobs.retention:1h}") Duration retention) {
+        this.retention = retention;
+        
+        // Own pool rather than a bean, so @Async work keeps Spring Boot's default executor
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaxPoolSize(maxConcurrent);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("job-");
+        executor.initialize();
+    }
+    
+    /**
+     * Queue work for a user, or return the job of that type already queued or running.
+     * The work gets a callback to report progress and returns the job's result.
+     */
+    public JobResponse submit(String userId, String type, Function<Consumer<String>, Object> work) {
+        String activeKey = userId + ":" + type;
+        Job created = new Job(UUID.randomUUID().toString(), userId, type);
+        
+        String jobId = activeJobs.computeIfAbsent(activeKey, key -> {
+            jobs.put(created.id, created);
+            return created.id;
+        });
+        
+        if (!jobId.equals(created.id)) {
+            log.info("Reusing {} job {} for user: {}", type, jobId, userId);
+            return toResponse(jobs.get(jobId));
+        }
+        
+        try {
+            executor.execute(() -> run(created, activeKey, work));
+        } catch (TaskRejectedException e) {
+            jobs.remove(created.id);
+            activeJobs.remove(activeKey, created.id);
+            throw new CustomExceptions.RateLimitException("Too many jobs are queued. Please try again later.");
+        }
+        
+        log.info("Queued {} job {} for user: {}", type, created.id, userId);
+        return toResponse(created);
+    }
+    
+    /**
+     * Job status, only visible to the user who submitted it
+     */
+    public JobResponse getJob(String jobId, String userId) {
+        Job job = jobs.get(jobId);
+        if (job == null || !job.userId.equals(userId)) {
+            throw new CustomExceptions.NotFoundException("Job not found: " + jobId);
+        }
+        return toResponse(job);
+    }
+    
+    /**
+     * Forget finished jobs once they are older than the retention period
+     */
+    @Scheduled(fixedDelayString = "${app.jobs.cleanup-interval-ms:300000}")
+    public void evictFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+    
+    private void run(Job job, String activeKey, Function<Consumer<String>, Object> work) {
+        job.status = "running";
+        job.startedAt = LocalDateTime.now();
+        
+        try {
+            job.result = work.apply(progress -> job.progress = progress);
+            job.status = "succeeded";
+        } catch (Exception e) {
+            log.error("{} job {} failed: {}", job.type, job.id, e.getMessage(), e);
+            job.error = e.getMessage();
+            job.status = "failed";
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            activeJobs.remove(activeKey, job.id);
+        }
+    }
+    
+    private JobResponse toResponse(Job job) {
+        return JobResponse.builder()
+            .id(job.id)
+            .type(job.type)
+            .status(job.status)
+            .progress(job.progress)
+            .result(job.result)
+            .error(job.error)
+            .createdAt(job.createdAt)
+            .startedAt(job.startedAt)
+            .finishedAt(job.finishedAt)
+            .build();
+    }
+    
+    private static final class Job {
+        
+        private final String id;
+        private final String userId;
+        private final String type;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        
+        // Written by the job thread, read by status requests
+        private volatile String status = "queued";
+        private volatile String progress;
+        private volatile Object result;
+        private volatile String error;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        
+        Job(String id, String userId, String type) {
+            this.id = id;
+            this.userId = userId;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.musicrec.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.musicrec.entity.LastFmCacheEntry;
+import com.musicrec.repository.LastFmCacheRepository;
+import com.musicrec.util.SingleFlight;
+import com.musicrec.util.StringUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache for Last.fm lookups: Caffeine in memory over the lastfm_cache table.
+ * Keys are the Last.fm method plus the normalized artist or tag, so "Radiohead" and
+ * " radiohead " share one entry. Empty results are kept for a shorter negative TTL;
+ * errors are never cached.
+ */
+@Component
+@Slf4j
+public class LastFmCache {
+    
+    private final LastFmCacheRepository repository;
+    private final SingleFlight singleFlight;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Duration> ttlByMethod;
+    private final Duration negativeTtl;
+    private final Cache<String, CachedValue> memory;
+    
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    
+    public LastFmCache(LastFmCacheRepository repository,
+                       SingleFlight singleFlight,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.lastfm.cache.similar-artists-ttl:7d}") Duration similarArtistsTtl,
+                       @Value("${app.lastfm.cache.top-tracks-ttl:3d}") Duration topTracksTtl,
+                       @Value("${app.lastfm.cache.artist-tags-ttl:14d}") Duration artistTagsTtl,
+                       @Value("${app.lastfm.cache.tag-tracks-ttl:1d}") Duration tagTracksTtl,
+                       @Value("${app.lastfm.cache.negative-ttl:1h}") Duration negativeTtl,
+                       @Value("${app.lastfm.cache.memory-max-size:10000}") long memoryMaxSize) {
+        this.repository = repository;
+        this.singleFlight = singleFlight;
+        this.objectMapper = objectMapper;
+        this.negativeTtl = negativeTtl;
+        this.ttlByMethod = Map.of(
+            "artist.getsimilar", similarArtistsTtl,
+            "artist.gettoptracks", topTracksTtl,
+            "artist.gettoptags", artistTagsTtl,
+            "tag.gettoptracks", tagTracksTtl
+        );
+        this.memory = Caffeine.newBuilder()
+            .maximumSize(memoryMaxSize)
+            .expireAfter(new Expiry<String, CachedValue>() {
+                @Override
+                public long expireAfterCreate(String key, CachedValue value, long currentTime) {
+                    return value.remainingNanos();
+                }
+                
+                @Override
+                public long expireAfterUpdate(String key, CachedValue value, long currentTime, long currentDuration) {
+                    return value.remainingNanos();
+                }
+                
+                @Override
+                public long expireAfterRead(String key, CachedValue value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+        
+        this.memoryHits = Counter.builder("lastfm.cache.requests").tag("result", "memory_hit").register(meterRegistry);
+        this.diskHits = Counter.builder("lastfm.cache.requests").tag("result", "disk_hit").register(meterRegistry);
+        this.misses = Counter.builder("lastfm.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("lastfm.cache.hit.ratio", this, LastFmCache::hitRatio).register(meterRegistry);
+        Gauge.builder("lastfm.cache.upstream.calls.saved", this, cache -> cache.memoryHits.count() + cache.diskHits.count())
+            .register(meterRegistry);
+        Gauge.builder("lastfm.cache.memory.size", memory, Cache::estimatedSize).register(meterRegistry);
+    }
+    
+    /**
+     * Return the cached value for (method, subject), or subscribe to the loader and
+     * store what it emits. Loader errors pass through untouched and are not cached.
+     */
+    public <T> Mono<T> get(String method, String subject, TypeReference<T> type, Supplier<Mono<T>> loader) {
+        String key = method + ":" + StringUtil.normalize(subject);
+        
+        CachedValue inMemory = memory.getIfPresent(key);
+        if (inMemory != null) {
+            memoryHits.increment();
+            return Mono.fromCallable(() -> readPayload(inMemory.payload(), type));
+        }
+        
+        // Concurrent misses on the same key share one disk lookup and one upstream call
+        return singleFlight.execute("lastfm:" + key, () -> Mono.fromCallable(() -> Optional.ofNullable(loadFromDisk(key)))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(onDisk -> {
+                if (onDisk.isPresent()) {
+                    diskHits.increment();
+                    memory.put(key, onDisk.get());
+                    return Mono.just(readPayload(onDisk.get().payload(), type));
+                }
+                
+                misses.increment();
+                return loader.get().doOnNext(value -> store(key, method, value));
+            }));
+    }
+    
+    /**
+     * Drop expired rows from the on-disk tier
+     */
+    @Scheduled(fixedDelayString = "${app.lastfm.cache.cleanup-interval-ms:3600000}")
+    @Transactional
+    public void evictExpired() {
+        int removed = repository.deleteExpired(LocalDateTime.now());
+        if (removed > 0) {
+            log.info("🗑️ Evicted {} expired Last.fm cache entries", removed);
+        }
+    }
+    
+    public double hitRatio() {
+        double hits = memoryHits.count() + diskHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+    
+    private CachedValue loadFromDisk(String key) {
+        return repository.findById(key)
+            .filter(entry -> entry.getExpiresAt().isAfter(LocalDateTime.now()))
+            .map(entry -> new CachedValue(entry.getPayload(), entry.getExpiresAt()))
+            .orElse(null);
+    }
+    
+    private void store(String key, String method, Object value) {
+        boolean empty = value instanceof Collection<?> collection && collection.isEmpty();
+        Duration ttl = empty ? negativeTtl : ttlByMethod.getOrDefault(method, negativeTtl);
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            log.warn("Could not serialize Last.fm cache entry {}: {}", key, e.getMessage());
+            return;
+        }
+        
+        memory.put(key, new CachedValue(payload, expiresAt));
+        
+        // Write-behind to the disk tier, the caller does not wait for it
+        Mono.fromRunnable(() -> repository.save(LastFmCacheEntry.builder()
+                .cacheKey(key)
+                .payload(payload)
+                .expiresAt(expiresAt)
+                .build()))
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe(null, e -> log.warn("Could not persist Last.fm cache entry {}: {}", key, e.getMessage()));
+    }
+    
+    private <T> T readPayload(String payload, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(payload, type);
+        } catch (Exception e) {
+            throw new IllegalStateException("Corrupt Last.fm cache entry", e);
+        }
+    }
+    
+    private record CachedValue(String payload, LocalDateTime expiresAt) {
+        long remainingNanos() {
+            return Math.max(0, Duration.between(LocalDateTime.now(), expiresAt).toNanos());
+        }
+    }
+}
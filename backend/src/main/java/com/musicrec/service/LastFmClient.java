@@ -0,0 +1,233 @@
+package com.musicrec.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.musicrec.exception.CustomExceptions;
+import com.musicrec.util.RateLimiter;
+import com.musicrec.util.StringUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Non-blocking Last.fm client. Every method returns a cold Mono that waits for
+ * its slot in the shared {@link RateLimiter} budget with a timer instead of a sleeping thread.
+ * Results go through {@link LastFmCache}. Failures are logged and mapped to an
+ * empty list, same as the old blocking service.
+ */
+@Service
+@Slf4j
+public class LastFmClient {
+    
+    private static final String RATE_LIMIT_KEY = "lastfm_api";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration RATE_LIMIT_BACKOFF = Duration.ofSeconds(3);
+    private static final Set<String> EXCLUDED_TAGS = Set.of("seen live", "fm", "");
+    // Operation failed, service offline, temporarily unavailable, rate limit exceeded
+    private static final Set<Integer> TRANSIENT_ERROR_CODES = Set.of(8, 11, 16, 29);
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {};
+    private static final TypeReference<List<Map<String, String>>> TRACK_LIST = new TypeReference<>() {};
+    
+    private final WebClient webClient;
+    private final LastFmCache cache;
+    private final RateLimiter rateLimiter;
+    private final String apiKey;
+    
+    public LastFmClient(@Qualifier("lastFmWebClient") WebClient webClient,
+                        LastFmCache cache,
+                        RateLimiter rateLimiter,
+                        @Value("${app.lastfm.api-key}") String apiKey,
+                        @Value("${app.rate-limit.lastfm-calls-per-second:2}") int maxRequestsPerSecond) {
+        this.webClient = webClient;
+        this.cache = cache;
+        this.rateLimiter = rateLimiter;
+        this.apiKey = apiKey;
+        // Burst of one: requests are spread evenly rather than sent in clumps
+        rateLimiter.configure(RATE_LIMIT_KEY, maxRequestsPerSecond, 1);
+    }
+    
+    public Mono<List<String>> getSimilarArtists(String artistName) {
+        if (StringUtil.normalize(artistName).isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        
+        return cache.get("artist.getsimilar", artistName, STRING_LIST, () ->
+                call("artist.getsimilar", "artist", artistName, 6)
+                    .map(response -> {
+                        List<String> result = new ArrayList<>();
+                        JsonNode artists = arrayAt(response, "similarartists", "artist");
+                        for (JsonNode artist : artists) {
+                            result.add(StringUtil.sanitize(artist.path("name").asText()));
+                        }
+                        return result;
+                    }))
+            .onErrorResume(e -> fallback("getSimilarArtists", artistName, e));
+    }
+    
+    public Mono<List<Map<String, String>>> getTopTracksForArtist(String artistName, String seedArtist) {
+        if (StringUtil.normalize(artistName).isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        
+        // Cached without the seed, which differs per caller
+        return cache.get("artist.gettoptracks", artistName, TRACK_LIST, () ->
+                call("artist.gettoptracks", "artist", artistName, 5)
+                    .map(response -> {
+                        List<Map<String, String>> result = new ArrayList<>();
+                        JsonNode tracks = arrayAt(response, "toptracks", "track");
+                        for (JsonNode track : tracks) {
+                            String trackName = track.path("name").asText();
+                            if (!trackName.isEmpty()) {
+                                Map<String, String> trackData = new HashMap<>();
+                                trackData.put("trackName", StringUtil.sanitize(trackName));
+                                trackData.put("artist", StringUtil.sanitize(artistName));
+                                trackData.put("source", "artist_similarity");
+                                result.add(trackData);
+                            }
+                        }
+                        return result;
+                    }))
+            .map(tracks -> withSeed(tracks, "artistSeed", seedArtist))
+            .onErrorResume(e -> fallback("getTopTracks", artistName, e));
+    }
+    
+    public Mono<List<String>> getArtistTags(String artistName) {
+        if (StringUtil.normalize(artistName).isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        
+        return cache.get("artist.gettoptags", artistName, STRING_LIST, () ->
+                call("artist.gettoptags", "artist", artistName, 5)
+                    .map(response -> {
+                        List<String> result = new ArrayList<>();
+                        JsonNode tags = arrayAt(response, "toptags", "tag");
+                        for (JsonNode tag : tags) {
+                            String tagName = StringUtil.sanitize(tag.path("name").asText().toLowerCase());
+                            if (!EXCLUDED_TAGS.contains(tagName)) {
+                                result.add(tagName);
+                            }
+                        }
+                        return result;
+                    }))
+            .onErrorResume(e -> fallback("getArtistTags", artistName, e));
+    }
+    
+    public Mono<List<Map<String, String>>> getTopTracksForTag(String tag, String seedTag) {
+        if (StringUtil.normalize(tag).isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        
+        // Cached without the seed, which differs per caller
+        return cache.get("tag.gettoptracks", tag, TRACK_LIST, () ->
+                call("tag.gettoptracks", "tag", tag, 5)
+                    .map(response -> {
+                        List<Map<String, String>> result = new ArrayList<>();
+                        JsonNode tracks = arrayAt(response, "tracks", "track");
+                        for (JsonNode track : tracks) {
+                            String trackName = track.path("name").asText();
+                            JsonNode artistNode = track.path("artist");
+                            String artistName = artistNode.isObject() ?
+                                artistNode.path("name").asText() : artistNode.asText();
+                            
+                            if (!trackName.isEmpty() && !artistName.isEmpty()) {
+                                Map<String, String> trackData = new HashMap<>();
+                                trackData.put("trackName", StringUtil.sanitize(trackName));
+                                trackData.put("artist", StringUtil.sanitize(artistName));
+                                trackData.put("source", "genre_similarity");
+                                trackData.put("tags", StringUtil.sanitize(tag));
+                                result.add(trackData);
+                            }
+                        }
+                        return result;
+                    }))
+            .map(tracks -> withSeed(tracks, "genreSeed", seedTag))
+            .onErrorResume(e -> fallback("getTopTracksForTag", tag, e));
+    }
+    
+    /**
+     * Paced GET against the Last.fm API. Deferred so that pacing happens on
+     * subscription, and retries go back through the pacer.
+     */
+    private Mono<JsonNode> call(String method, String paramName, String paramValue, int limit) {
+        return Mono.defer(() -> rateLimiter.acquire(RATE_LIMIT_KEY, 1)
+                .then(webClient.get()
+                    .uri(uriBuilder -> uriBuilder
+                        .queryParam("method", method)
+                        .queryParam(paramName, "{value}")
+                        .queryParam("api_key", apiKey)
+                        .queryParam("format", "json")
+                        .queryParam("limit", limit)
+                        .build(paramValue))
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)
+                    .timeout(REQUEST_TIMEOUT)
+                    .flatMap(this::rejectTransientError)))
+            .retryWhen(Retry.backoff(3, Duration.ofSeconds(2)).filter(LastFmClient::isRetryable))
+            // Unknown artist or tag is an answer, not a failure: let it be negatively cached
+            .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(MissingNode.getInstance()));
+    }
+    
+    /**
+     * Last.fm reports some failures in a 200 body. Turn the transient ones into
+     * errors so they are retried and never cached as an empty answer.
+     */
+    private Mono<JsonNode> rejectTransientError(JsonNode response) {
+        int errorCode = response.path("error").asInt(0);
+        if (TRANSIENT_ERROR_CODES.contains(errorCode)) {
+            return Mono.error(new CustomExceptions.LastFmApiException(
+                "Last.fm error " + errorCode + ": " + response.path("message").asText()));
+        }
+        return Mono.just(response);
+    }
+    
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return true;
+    }
+    
+    /**
+     * Copy cached tracks and stamp them with the caller's seed
+     */
+    private List<Map<String, String>> withSeed(List<Map<String, String>> tracks, String seedField, String seed) {
+        List<Map<String, String>> seeded = new ArrayList<>(tracks.size());
+        for (Map<String, String> track : tracks) {
+            Map<String, String> copy = new HashMap<>(track);
+            copy.put(seedField, StringUtil.sanitize(seed));
+            seeded.add(copy);
+        }
+        return seeded;
+    }
+    
+    /**
+     * Nested list in a Last.fm response, or an empty array when it is missing or not a list
+     */
+    private JsonNode arrayAt(JsonNode response, String container, String field) {
+        JsonNode node = response.path(container).path(field);
+        return node.isArray() ? node : MissingNode.getInstance();
+    }
+    
+    private <T> Mono<List<T>> fallback(String operation, String subject, Throwable e) {
+        Throwable cause = e.getCause() instanceof WebClientResponseException ? e.getCause() : e;
+        if (cause instanceof WebClientResponseException responseException
+                && responseException.getStatusCode().value() == 429) {
+            log.warn("Last.fm rate limit hit for {}: {}", operation, subject);
+            // Push every queued caller back instead of sleeping this one
+            rateLimiter.penalize(RATE_LIMIT_KEY, RATE_LIMIT_BACKOFF);
+        } else {
+            log.warn("Last.fm {} failed for {}: {}", operation, subject, cause.getMessage());
+        }
+        return Mono.just(Collections.emptyList());
+    }
+}
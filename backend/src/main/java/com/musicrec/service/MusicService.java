@@ -3,16 +3,23 @@ package com.musicrec.service;
 import com.musicrec.dto.*;
 import com.musicrec.entity.Track;
 import com.musicrec.entity.Feedback;
+import com.musicrec.entity.User;
 import com.musicrec.repository.TrackRepository;
 import com.musicrec.repository.FeedbackRepository;
+import com.musicrec.repository.UserRepository;
 import com.musicrec.util.SessionManager;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
@@ -22,6 +29,11 @@ public class MusicService {
     private final SpotifyService spotifyService;
     private final TrackRepository trackRepository;
     private final FeedbackRepository feedbackRepository;
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final RecommendationReranker reranker;
+    private final TasteProfileService tasteProfiles;
+    private final StatsService statsService;
     
     // OPTION 1: If you have SessionManager
     private final SessionManager sessionManager;
@@ -29,24 +41,29 @@ public class MusicService {
     // OPTION 2: If you DON'T have SessionManager, remove the line above and use the method below
     // You'll need to pass the access token from your authentication system
     
+    // Tracks per flush/clear cycle; a multiple of hibernate.jdbc.batch_size
+    private static final int INSERT_CHUNK_SIZE = 500;
+    
     /**
      * FIXED: Only fetches and stores Spotify liked tracks.
      * No Last.fm calls, no genre fetching - super fast!
+     * After the first sync only tracks liked since the last one are downloaded.
      */
     @Transactional
     public ExpandResponse expandDataset(String userId) {
+        return expandDataset(userId, progress -> {});
+    }
+    
+    /**
+     * expandDataset reporting what it is doing (pages fetched, rows saved) to progress
+     */
+    @Transactional
+    public ExpandResponse expandDataset(String userId, Consumer<String> progress) {
         log.info("Starting dataset expansion for user: {}", userId);
         
         try {
-            // OPTION 1: Using SessionManager (if you have it)
-            String accessToken = sessionManager.getAccessToken(userId);
-            
-            // OPTION 2: If you DON'T have SessionManager, get token from your auth system:
-            // String accessToken = yourAuthService.getTokenForUser(userId);
-            // OR if token is stored elsewhere:
-            // String accessToken = userRepository.findById(userId).orElseThrow().getSpotifyAccessToken();
-            
-            if (accessToken == null || accessToken.isEmpty()) {
+            // SpotifyService looks the token up per call and refreshes it when it expires mid-sync
+            if (!sessionManager.hasAccessToken(userId)) {
                 return ExpandResponse.builder()
                     .success(false)
                     .totalTracks(0)
@@ -54,11 +71,56 @@ public class MusicService {
                     .build();
             }
             
-            // Fetch ALL liked tracks from Spotify (NO genre calls - fast!)
-            List<Map<String, Object>> spotifyTracks = spotifyService.getAllLikedTracks(accessToken);
-            log.info("✅ Fetched {} tracks from Spotify", spotifyTracks.size());
+            // Sync liked tracks from Spotify (NO genre calls - fast!)
+            User user = userRepository.findBySpotifyId(userId).orElse(null);
+            LocalDateTime syncedUntil = user != null ? user.getLikedTracksSyncedUntil() : null;
+            long storedBefore = trackRepository.countByUserIdAndSource(userId, "spotify_liked");
+            
+            SyncResult sync;
+            boolean reconciled = false;
+            
+            if (syncedUntil != null && storedBefore > 0) {
+                // Incremental: only page until we reach tracks we already have
+                LikedTracksResult fetched = spotifyService.getLikedTracks(userId, syncedUntil, progress);
+                int added = insertNewLikedTracks(userId, fetched.getTracks());
+                sync = new SyncResult(fetched, added, 0);
+                
+                // Un-liked tracks never show up when paging by added_at, but the library size gives them away.
+                // Items that can never be stored are part of Spotify's total, so they are counted back in
+                int unstored = user.getLikedTracksUnstored() != null ? user.getLikedTracksUnstored() : -1;
+                if (fetched.isComplete() && (unstored < 0 || storedBefore + added + unstored != fetched.getTotal())) {
+                    log.info("Spotify reports {} liked tracks but {} are stored ({} not storable), running full sync",
+                            fetched.getTotal(), storedBefore + added, unstored);
+                    SyncResult full = reconcileLikedTracks(userId, progress);
+                    sync = new SyncResult(full.fetched(), added + full.added(), full.removed());
+                    reconciled = true;
+                }
+            } else {
+                sync = reconcileLikedTracks(userId, progress);
+                reconciled = true;
+            }
+            
+            if (sync.added() > 0 || sync.removed() > 0) {
+                afterCommit(() -> statsService.onTracksChanged(userId));
+            }
+            
+            long storedCount = trackRepository.countByUserIdAndSource(userId, "spotify_liked");
+            
+            if (user != null && sync.fetched().isComplete()) {
+                // Only move the cursor when paging finished, otherwise the next sync could skip tracks
+                LocalDateTime newest = sync.fetched().getNewestAddedAt();
+                if (newest != null && (syncedUntil == null || newest.isAfter(syncedUntil))) {
+                    user.setLikedTracksSyncedUntil(newest);
+                }
+                // A full listing tells how many of Spotify's items could not be stored
+                if (reconciled) {
+                    user.setLikedTracksUnstored((int) Math.max(0, sync.fetched().getTotal() - storedCount));
+                }
+                userRepository.save(user);
+            }
+            log.info("✅ Liked tracks synced: {} stored, {} new, {} removed", storedCount, sync.added(), sync.removed());
             
-            if (spotifyTracks.isEmpty()) {
+            if (storedCount == 0) {
                 return ExpandResponse.builder()
                     .success(true)
                     .totalTracks(0)
@@ -66,41 +128,12 @@ public class MusicService {
                     .build();
             }
             
-            // Delete old liked tracks for this user to avoid duplicates
-            trackRepository.deleteByUserIdAndSource(userId, "spotify_liked");
-            log.info("Cleared old liked tracks for user: {}", userId);
-            
-            // Save new tracks to database
-            int savedCount = 0;
-            for (Map<String, Object> trackData : spotifyTracks) {
-                try {
-                    Track track = new Track();
-                    track.setUserId(userId);
-                    track.setSpotifyId((String) trackData.get("spotifyId"));
-                    track.setTrackName((String) trackData.get("trackName"));
-                    track.setArtist((String) trackData.get("artist"));
-                    track.setArtistId((String) trackData.get("artistId")); // Store for later genre fetching
-                    track.setAlbum((String) trackData.get("album"));
-                    track.setYear((String) trackData.get("year"));
-                    track.setAlbumImage((String) trackData.get("albumImage"));
-                    track.setTags(""); // Empty for now, will be filled during recommendation generation
-                    track.setSource("spotify_liked");
-                    track.setCreatedAt(LocalDateTime.now());
-                    
-                    trackRepository.save(track);
-                    savedCount++;
-                } catch (Exception e) {
-                    log.warn("Failed to save track: {}", e.getMessage());
-                }
-            }
-            
-            log.info("✅ Saved {} tracks to database", savedCount);
-            
             // Return success (NO Last.fm calls - that happens during recommendation generation!)
             return ExpandResponse.builder()
                     .success(true)
-                    .totalTracks(savedCount)
-                    .message(String.format("✅ Successfully fetched and stored %d liked tracks from Spotify! Click 'Generate Recommendations' to get started.", savedCount))
+                    .totalTracks((int) storedCount)
+                    .message(String.format("✅ Synced %d liked tracks from Spotify (%d new, %d removed)! Click 'Generate Recommendations' to get started.",
+                            storedCount, sync.added(), sync.removed()))
                     .build();
                     
         } catch (IllegalStateException e) {
@@ -120,32 +153,161 @@ public class MusicService {
         }
     }
     
+    /**
+     * Insert fetched tracks the user does not have stored yet
+     */
+    private int insertNewLikedTracks(String userId, List<SpotifyTrackDto> fetchedTracks) {
+        Set<String> known = trackRepository.findSpotifyIdsByUserIdAndSource(userId, "spotify_liked");
+        
+        List<Track> toInsert = new ArrayList<>();
+        for (SpotifyTrackDto trackData : fetchedTracks) {
+            String spotifyId = trackData.getSpotifyId();
+            if (spotifyId != null && known.add(spotifyId)) {
+                Track track = toLikedTrack(userId, trackData);
+                if (track != null) {
+                    toInsert.add(track);
+                }
+            }
+        }
+        
+        int saved = saveInChunks(toInsert);
+        afterCommit(() -> tasteProfiles.onLikedTracksChanged(userId, toInsert, Collections.emptyList()));
+        return saved;
+    }
+    
+    /**
+     * Make stored liked tracks match the full Spotify library. Each page is written
+     * as it arrives: new tracks are inserted and, once the listing is known to be
+     * complete, un-liked ones are deleted. Rows that are still liked are left alone,
+     * so their ids, feedback and genre tags survive the sync.
+     */
+    private SyncResult reconcileLikedTracks(String userId, Consumer<String> progress) {
+        List<Track> stored = trackRepository.findByUserIdAndSource(userId, "spotify_liked");
+        Map<String, Track> storedBySpotifyId = new HashMap<>();
+        List<Track> toDelete = new ArrayList<>();
+        
+        for (Track track : stored) {
+            // Rows without a Spotify id or duplicated ones are leftovers of the old delete-and-reinsert sync
+            if (track.getSpotifyId() == null || storedBySpotifyId.putIfAbsent(track.getSpotifyId(), track) != null) {
+                toDelete.add(track);
+            }
+        }
+        
+        Set<String> remoteIds = new HashSet<>();
+        AtomicInteger added = new AtomicInteger();
+        
+        LikedTracksResult fetched = spotifyService.streamAllLikedTracks(userId, page -> {
+            List<Track> toInsert = new ArrayList<>();
+            List<Track> toBackfill = new ArrayList<>();
+            
+            for (SpotifyTrackDto trackData : page) {
+                String spotifyId = trackData.getSpotifyId();
+                if (spotifyId == null || !remoteIds.add(spotifyId)) {
+                    continue;
+                }
+                
+                Track existing = storedBySpotifyId.get(spotifyId);
+                if (existing == null) {
+                    Track track = toLikedTrack(userId, trackData);
+                    if (track != null) {
+                        toInsert.add(track);
+                    }
+                } else if (existing.getAddedAt() == null && trackData.getAddedAt() != null) {
+                    // Backfill rows stored before added_at was tracked
+                    existing.setAddedAt(trackData.getAddedAt());
+                    toBackfill.add(existing);
+                }
+            }
+            
+            // Earlier pages cleared the persistence context, so backfilled rows are merged explicitly
+            trackRepository.saveAll(toBackfill);
+            added.addAndGet(saveInChunks(toInsert));
+            afterCommit(() -> tasteProfiles.onLikedTracksChanged(userId, toInsert, Collections.emptyList()));
+        }, progress);
+        
+        int removed = 0;
+        if (fetched.isComplete()) {
+            storedBySpotifyId.values().stream()
+                .filter(track -> !remoteIds.contains(track.getSpotifyId()))
+                .forEach(toDelete::add);
+            progress.accept(String.format("Removing %d tracks no longer liked on Spotify", toDelete.size()));
+            trackRepository.deleteAllByIdInBatch(toDelete.stream().map(Track::getId).toList());
+            afterCommit(() -> tasteProfiles.onLikedTracksChanged(userId, Collections.emptyList(), toDelete));
+            removed = toDelete.size();
+        }
+        
+        return new SyncResult(fetched, added.get(), removed);
+    }
+    
+    /**
+     * Run an in-memory update once the current transaction has committed, so models,
+     * profiles and counters never take in rows that are then rolled back.
+     * Runs right away outside a transaction.
+     */
+    private static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+    
+    /**
+     * Build an unsaved liked Track from Spotify data, or null if it cannot be stored
+     */
+    private Track toLikedTrack(String userId, SpotifyTrackDto trackData) {
+        // A bad row would fail its whole JDBC batch, so drop it up front
+        if (trackData.getTrackName() == null || trackData.getArtist() == null) {
+            log.warn("Skipping track without name or artist: {}", trackData.getSpotifyId());
+            return null;
+        }
+        
+        Track track = new Track();
+        track.setUserId(userId);
+        track.setSpotifyId(trackData.getSpotifyId());
+        track.setTrackName(trackData.getTrackName());
+        track.setArtist(trackData.getArtist());
+        track.setArtistId(trackData.getArtistId()); // Store for later genre fetching
+        track.setAlbum(trackData.getAlbum());
+        track.setYear(trackData.getYear());
+        track.setAlbumImage(trackData.getAlbumImage());
+        track.setTags(""); // Genres are looked up in the artist_genre catalog by artistId
+        track.setSource("spotify_liked");
+        track.setAddedAt(trackData.getAddedAt());
+        track.setCreatedAt(LocalDateTime.now());
+        return track;
+    }
+    
+    /**
+     * Insert tracks chunk by chunk. Each chunk goes out as JDBC batches
+     * (hibernate.jdbc.batch_size) and is then detached so the persistence
+     * context stays small for libraries with tens of thousands of songs.
+     * Package-private for LikedTrackInsertBenchmarkTest.
+     */
+    int saveInChunks(List<Track> tracks) {
+        int saved = 0;
+        for (int from = 0; from < tracks.size(); from += INSERT_CHUNK_SIZE) {
+            List<Track> chunk = tracks.subList(from, Math.min(from + INSERT_CHUNK_SIZE, tracks.size()));
+            trackRepository.saveAll(chunk);
+            entityManager.flush();
+            entityManager.clear();
+            saved += chunk.size();
+        }
+        return saved;
+    }
+    
     /**
      * Get statistics about user's music data
      */
     public StatsResponse getStats(String userId) {
         try {
-            // Count liked tracks
-            long likedTracksCount = trackRepository.countByUserIdAndSource(userId, "spotify_liked");
-            
-            // Count recommended tracks
-            long recommendedTracksCount = trackRepository.countByUserIdAndSourceNot(userId, "spotify_liked");
-            
-            // Get unique artists
-            List<String> uniqueArtists = trackRepository.findDistinctArtistsByUserId(userId);
-            
-            // Get feedback stats
-            long likedRecommendations = feedbackRepository.countByUserIdAndFeedbackType(userId, "like");
-            long dislikedRecommendations = feedbackRepository.countByUserIdAndFeedbackType(userId, "dislike");
-            
-            return StatsResponse.builder()
-                    .success(true)
-                    .likedTracksCount(likedTracksCount)
-                    .recommendedTracksCount(recommendedTracksCount)
-                    .uniqueArtistsCount(uniqueArtists.size())
-                    .likedRecommendations(likedRecommendations)
-                    .dislikedRecommendations(dislikedRecommendations)
-                    .build();
+            // Track and feedback counts in one aggregate query, cached as counters
+            return statsService.getStats(userId);
                     
         } catch (Exception e) {
             log.error("Error getting stats: {}", e.getMessage());
@@ -198,9 +360,11 @@ public class MusicService {
                     .findByUserIdAndTrackId(userId, request.getTrackId());
             
             Feedback feedback;
+            String previousType = null;
             if (existingFeedback.isPresent()) {
                 // Update existing feedback
                 feedback = existingFeedback.get();
+                previousType = feedback.getFeedbackType();
                 feedback.setFeedbackType(request.getFeedbackType());
                 feedback.setUpdatedAt(LocalDateTime.now());
             } else {
@@ -214,6 +378,12 @@ public class MusicService {
             }
             
             feedbackRepository.save(feedback);
+            String oldType = previousType;
+            afterCommit(() -> {
+                reranker.onFeedback(userId, track, request.getFeedbackType());
+                tasteProfiles.onFeedback(userId, track, oldType, request.getFeedbackType());
+                statsService.onFeedback(userId, oldType, request.getFeedbackType());
+            });
             
             log.info("Saved feedback for user {}: {} on track '{}'", 
                     userId, request.getFeedbackType(), track.getTrackName());
@@ -231,4 +401,6 @@ public class MusicService {
                     .build();
         }
     }
+    
+    private record SyncResult(LikedTracksResult fetched, int added, int removed) {}
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.musicrec.dto.RecommendationResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Recommendation batches computed ahead of time, per user and batch index.
+ * Entries are futures, so a request for a batch that is still being warmed
+ * up waits for that work instead of starting it a second time.
+ */
+@Component
+@Slf4j
+public class RecommendationBatchStore {
+    
+    private final Cache<BatchKey, CompletableFuture<RecommendationResponse>> batches;
+    
+    public RecommendationBatchStore(@Value("${app.recommendation.precompute.ttl:30m}") Duration ttl,
+                                    @Value("${app.recommendation.precompute.max-size:5000}") long maxSize) {
+        this.batches = Caffeine.newBuilder()
+            .expireAfterWrite(ttl)
+            .maximumSize(maxSize)
+            .build();
+    }
+    
+    /**
+     * The stored batch, waiting for it if it is still being computed.
+     * Null when there is none or its computation failed.
+     */
+    public RecommendationResponse await(String userId, int batchIndex) {
+        CompletableFuture<RecommendationResponse> future = batches.getIfPresent(new BatchKey(userId, batchIndex));
+        if (future == null) {
+            return null;
+        }
+        
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            log.warn("Precomputing batch {} for user {} failed: {}", batchIndex + 1, userId, e.getMessage());
+            return null;
+        }
+    }
+    
+    public void put(String userId, int batchIndex, RecommendationResponse response) {
+        if (response.isSuccess()) {
+            batches.put(new BatchKey(userId, batchIndex), CompletableFuture.completedFuture(response));
+        }
+    }
+    
+    /**
+     * Start computing a batch unless it is already stored or in progress.
+     * Returns the future of the batch, whichever call started it.
+     */
+    public CompletableFuture<RecommendationResponse> computeIfAbsent(String userId, int batchIndex,
+                                                                     Supplier<CompletableFuture<RecommendationResponse>> compute) {
+        BatchKey key = new BatchKey(userId, batchIndex);
+        CompletableFuture<RecommendationResponse> slot = new CompletableFuture<>();
+        CompletableFuture<RecommendationResponse> existing = batches.asMap().putIfAbsent(key, slot);
+        if (existing != null) {
+            return existing;
+        }
+        
+        CompletableFuture<RecommendationResponse> computation;
+        try {
+            computation = compute.get();
+        } catch (RuntimeException e) {
+            computation = CompletableFuture.failedFuture(e);
+        }
+        
+        computation.whenComplete((response, e) -> {
+            // Failures are not kept, the next lookup or warm-up tries again
+            if (e != null || !response.isSuccess()) {
+                batches.asMap().remove(key, slot);
+            }
+            if (e != null) {
+                slot.completeExceptionally(e);
+            } else {
+                slot.complete(response);
+            }
+        });
+        return slot;
+    }
+    
+    public void invalidate(String userId) {
+        batches.asMap().keySet().removeIf(key -> key.userId().equals(userId));
+    }
+    
+    private record BatchKey(String userId, int batchIndex) {}
+}
@@ -0,0 +1,94 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the next few recommendation batches of each user computed ahead of
+ * time, so Generate / Next are usually served straight from the batch store.
+ * Warm-up is kicked off after an expand and after every page the user views,
+ * and a scheduled pass tops up anything that expired or failed for users who
+ * viewed recommendations within the active window.
+ */
+@Component
+@Slf4j
+public class RecommendationPrecomputer {
+    
+    private final RecommendationService recommendationService;
+    private final RecommendationBatchStore batchStore;
+    private final int batchesAhead;
+    
+    // Users who asked for recommendations recently; only they are topped up
+    private final Cache<String, Boolean> activeUsers;
+    
+    public RecommendationPrecomputer(RecommendationService recommendationService,
+                                     RecommendationBatchStore batchStore,
+                                     @Value("${app.recommendation.precompute.batches-ahead:3}") int batchesAhead,
+                                     @Value("${app.recommendation.precompute.active-window:15m}") Duration activeWindow) {
+        this.recommendationService = recommendationService;
+        this.batchStore = batchStore;
+        this.batchesAhead = batchesAhead;
+        this.activeUsers = Caffeine.newBuilder()
+            .expireAfterWrite(activeWindow)
+            .build();
+    }
+    
+    /**
+     * Start computing the batches the user will ask for next and keep them topped
+     * up for the active window. Returns right away, the work runs on the async executor.
+     */
+    public void warmUp(String userId) {
+        activeUsers.put(userId, Boolean.TRUE);
+        fill(userId);
+    }
+    
+    /**
+     * Throw away batches built from the old liked tracks and start over
+     */
+    public void rebuild(String userId) {
+        recommendationService.discardPrecomputed(userId);
+        warmUp(userId);
+    }
+    
+    /**
+     * Stop precomputing for the user and drop what was computed (on logout)
+     */
+    public void forget(String userId) {
+        activeUsers.invalidate(userId);
+        recommendationService.discardPrecomputed(userId);
+    }
+    
+    @Scheduled(fixedDelayString = "${app.recommendation.precompute.interval-ms:60000}")
+    public void topUp() {
+        for (String userId : activeUsers.asMap().keySet()) {
+            fill(userId);
+        }
+    }
+    
+    private void fill(String userId) {
+        try {
+            int from = recommendationService.getCurrentBatchIndex(userId);
+            int to = Math.min(from + batchesAhead, recommendationService.countBatches(userId));
+            
+            // One batch at a time per user: batches share artist/track keys, so writing them
+            // in parallel would race on the same recommendation rows
+            CompletableFuture<?> previous = CompletableFuture.completedFuture(null);
+            for (int batchIndex = from; batchIndex < to; batchIndex++) {
+                int index = batchIndex;
+                CompletableFuture<?> after = previous;
+                previous = batchStore.computeIfAbsent(userId, index, () -> after
+                    .handle((response, e) -> null)
+                    .thenCompose(ignored -> recommendationService.precomputeBatch(userId, index)));
+            }
+        } catch (Exception e) {
+            log.warn("Could not warm up recommendations for user {}: {}", userId, e.getMessage());
+        }
+    }
+}
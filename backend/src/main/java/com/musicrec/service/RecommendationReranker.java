@@ -0,0 +1,289 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.musicrec.dto.TrackDto;
+import com.musicrec.entity.Feedback;
+import com.musicrec.entity.Track;
+import com.musicrec.repository.FeedbackRepository;
+import com.musicrec.repository.TrackRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import smile.classification.LogisticRegression;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Re-orders recommendations with a per-user logistic regression (Smile) trained
+ * on the user's likes and dislikes. Tracks are turned into hashed feature vectors
+ * of their artist, source, seeds and tags. Models are trained once the user has
+ * enough feedback, updated online with every new like/dislike, and kept in a
+ * size-bounded cache.
+ */
+@Service
+@Slf4j
+public class RecommendationReranker {
+    
+    // Hashed feature space; small enough that scoring is a short dot product
+    private static final int FEATURE_DIM = 512;
+    
+    private final FeedbackRepository feedbackRepository;
+    private final TrackRepository trackRepository;
+    private final int minFeedback;
+    private final double learningRate;
+    private final Timer rerankTimer;
+    
+    // Optional.empty() marks users without enough feedback, so they are not re-checked on every request
+    private final Cache<String, Optional<UserModel>> models;
+    
+    public RecommendationReranker(FeedbackRepository feedbackRepository,
+                                  TrackRepository trackRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.recommendation.rerank.min-feedback:20}") int minFeedback,
+                                  @Value("${app.recommendation.ml.learning-rate:0.1}") double learningRate,
+                                  @Value("${app.recommendation.ml.max-models:1000}") long maxModels) {
+        this.feedbackRepository = feedbackRepository;
+        this.trackRepository = trackRepository;
+        this.minFeedback = minFeedback;
+        this.learningRate = learningRate;
+        this.models = Caffeine.newBuilder()
+            .maximumSize(maxModels)
+            .build();
+        this.rerankTimer = Timer.builder("recommendation.rerank")
+            .description("Time spent scoring and sorting recommendations")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Recommendations ordered by predicted like probability, best first.
+     * Unchanged when the user has no model yet.
+     */
+    public List<TrackDto> rerank(String userId, List<TrackDto> recommendations) {
+        if (recommendations == null || recommendations.size() < 2) {
+            return recommendations;
+        }
+        
+        Optional<UserModel> model = models.get(userId, this::train);
+        if (model.isEmpty()) {
+            return recommendations;
+        }
+        
+        return rerankTimer.record(() -> {
+            UserModel userModel = model.get();
+            double[] scores = new double[recommendations.size()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = userModel.likeProbability(features(recommendations.get(i)));
+            }
+            
+            // Stable sort: equal scores keep the Last.fm order
+            Integer[] order = new Integer[scores.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+            
+            List<TrackDto> ranked = new ArrayList<>(order.length);
+            for (Integer i : order) {
+                ranked.add(recommendations.get(i));
+            }
+            return ranked;
+        });
+    }
+    
+    /**
+     * Feed a new like/dislike into the user's model, if one is loaded
+     */
+    public void onFeedback(String userId, Track track, String feedbackType) {
+        Optional<UserModel> model = models.getIfPresent(userId);
+        if (model == null) {
+            return;
+        }
+        
+        if (model.isPresent()) {
+            Integer label = label(feedbackType);
+            if (label != null) {
+                model.get().update(features(track).dense(), label);
+            }
+        } else {
+            // Maybe enough feedback now, train on the next request
+            models.invalidate(userId);
+        }
+    }
+    
+    private Optional<UserModel> train(String userId) {
+        List<Feedback> feedback = feedbackRepository.findByUserId(userId);
+        if (feedback.size() < minFeedback) {
+            return Optional.empty();
+        }
+        
+        Map<Long, Track> tracks = trackRepository.findAllById(feedback.stream().map(Feedback::getTrackId).toList())
+            .stream()
+            .collect(Collectors.toMap(Track::getId, Function.identity()));
+        
+        List<double[]> x = new ArrayList<>();
+        List<Integer> y = new ArrayList<>();
+        for (Feedback f : feedback) {
+            Track track = tracks.get(f.getTrackId());
+            Integer label = label(f.getFeedbackType());
+            if (track != null && label != null) {
+                x.add(features(track).dense());
+                y.add(label);
+            }
+        }
+        
+        // Logistic regression needs both likes and dislikes
+        if (x.size() < minFeedback || !y.contains(0) || !y.contains(1)) {
+            return Optional.empty();
+        }
+        
+        try {
+            LogisticRegression.Binomial model = LogisticRegression.binomial(
+                x.toArray(new double[0][]), y.stream().mapToInt(Integer::intValue).toArray(), 0.1, 1E-5, 500);
+            model.setLearningRate(learningRate);
+            log.info("🧠 Trained re-ranking model for user {} on {} feedback rows", userId, x.size());
+            return Optional.of(new UserModel(model));
+        } catch (Exception e) {
+            log.warn("Could not train re-ranking model for user {}: {}", userId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+    
+    private static Integer label(String feedbackType) {
+        if ("like".equals(feedbackType)) {
+            return 1;
+        }
+        if ("dislike".equals(feedbackType)) {
+            return 0;
+        }
+        return null;
+    }
+    
+    private static Features features(Track track) {
+        return features(track.getArtist(), track.getSource(), track.getArtistSeed(), track.getGenreSeed(), track.getTags());
+    }
+    
+    private static Features features(TrackDto track) {
+        return features(track.getArtist(), track.getSource(), track.getArtistSeed(), track.getGenreSeed(), track.getTags());
+    }
+    
+    /**
+     * Hashing trick: each token adds +-1 at a hashed index, then the vector is L2-normalized.
+     * Only the few touched slots are kept, so scoring does not walk all FEATURE_DIM of them.
+     */
+    private static Features features(String artist, String source, String artistSeed, String genreSeed, String tags) {
+        Features x = new Features();
+        x.add("artist=" + token(artist));
+        x.add("source=" + token(source));
+        x.add("artistSeed=" + token(artistSeed));
+        x.add("genreSeed=" + token(genreSeed));
+        if (tags != null) {
+            for (String tag : tags.split(",")) {
+                String normalized = token(tag);
+                if (!normalized.isEmpty()) {
+                    x.add("tag=" + normalized);
+                }
+            }
+        }
+        x.normalize();
+        return x;
+    }
+    
+    /**
+     * Case- and edge-whitespace-insensitive key for hashing. Cheaper than
+     * StringUtil.normalize (NFKC plus a regex), which dominated scoring time.
+     */
+    private static String token(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Sparse hashed feature vector: parallel arrays of slot and value
+     */
+    private static final class Features {
+        
+        private int[] slots = new int[8];
+        private double[] values = new double[8];
+        private int size;
+        
+        void add(String token) {
+            int hash = token.hashCode() * 0x9E3779B1;
+            // Low bits pick the slot, the top bit the sign, so collisions tend to cancel out
+            int slot = Math.floorMod(hash, FEATURE_DIM);
+            double sign = hash < 0 ? -1 : 1;
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    values[i] += sign;
+                    return;
+                }
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            slots[size] = slot;
+            values[size] = sign;
+            size++;
+        }
+        
+        void normalize() {
+            double norm = 0;
+            for (int i = 0; i < size; i++) {
+                norm += values[i] * values[i];
+            }
+            if (norm > 0) {
+                norm = Math.sqrt(norm);
+                for (int i = 0; i < size; i++) {
+                    values[i] /= norm;
+                }
+            }
+        }
+        
+        /**
+         * w . x plus the bias, with the bias last in w as Smile lays it out
+         */
+        double dot(double[] w) {
+            double z = w[FEATURE_DIM];
+            for (int i = 0; i < size; i++) {
+                z += w[slots[i]] * values[i];
+            }
+            return z;
+        }
+        
+        double[] dense() {
+            double[] x = new double[FEATURE_DIM];
+            for (int i = 0; i < size; i++) {
+                x[slots[i]] = values[i];
+            }
+            return x;
+        }
+    }
+    
+    /**
+     * Smile models are not thread-safe; scoring and updates for a user go through this lock
+     */
+    private static final class UserModel {
+        
+        private final LogisticRegression.Binomial model;
+        
+        UserModel(LogisticRegression.Binomial model) {
+            this.model = model;
+        }
+        
+        /**
+         * Same as model.score(x), over the sparse vector. coefficients() is the live
+         * weight array, so online updates are seen here.
+         */
+        synchronized double likeProbability(Features x) {
+            return 1 / (1 + Math.exp(-x.dot(model.coefficients())));
+        }
+        
+        synchronized void update(double[] x, int y) {
+            model.update(x, y);
+        }
+    }
+}
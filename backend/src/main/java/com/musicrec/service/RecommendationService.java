@@ -2,16 +2,29 @@ package com.musicrec.service;
 
 import com.musicrec.dto.*;
 import com.musicrec.entity.Track;
+import com.musicrec.exception.CustomExceptions;
 import com.musicrec.repository.TrackRepository;
 import com.musicrec.util.SessionManager;
+import com.musicrec.util.SparseVector;
+import com.musicrec.util.StringUtil;
+import com.musicrec.util.TagVocabulary;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,7 +34,15 @@ public class RecommendationService {
     
     private final TrackRepository trackRepository;
     private final SpotifyService spotifyService;
-    private final LastFmService lastFmService;
+    private final LastFmClient lastFmClient;
+    private final ArtistGraphService artistGraph;
+    private final TrackSimilarityIndex trackIndex;
+    private final ArtistGenreService artistGenreService;
+    private final RecommendationBatchStore batchStore;
+    private final RecommendationWriter recommendationWriter;
+    private final RecommendationReranker reranker;
+    private final TagVocabulary tagVocabulary;
+    private final TasteProfileService tasteProfiles;
     
     // OPTION 1: If you have SessionManager
     private final SessionManager sessionManager;
@@ -36,20 +57,37 @@ public class RecommendationService {
     private static final int BATCH_SIZE = 30; // Process 30 liked songs at a time
     private static final int MAX_ARTISTS_TO_PROCESS = 10; // Process top 10 artists from batch
     private static final int SIMILAR_ARTISTS_PER_ARTIST = 2; // Get 2 similar artists per artist
+    private static final int SIMILAR_ARTISTS_FROM_GRAPH = 6; // As many as one Last.fm artist.getsimilar call returns
+    private static final int INDEX_TRACKS_PER_SEED = 5; // Nearest tracks by other artists from the local index
+    private static final int INDEX_NEIGHBOURS = 25; // Neighbours looked at to find them
+    private static final int MAX_SIMILAR_TRACKS = 100;
     private static final int TARGET_RECOMMENDATIONS = 50; // Try to get ~50 recommendations
+    private static final Consumer<String> NO_PROGRESS = message -> {};
+    
+    // How many seed artists are worked on at once; the Last.fm quota still paces the calls
+    @Value("${app.recommendation.fan-out-parallelism:4}")
+    private int fanOutParallelism;
     
     /**
      * Generate recommendations - starts from batch 1
      */
     @Transactional
     public RecommendationResponse generateRecommendations(String userId) {
+        return generateRecommendations(userId, NO_PROGRESS);
+    }
+    
+    /**
+     * generateRecommendations reporting what it is doing (seed artists processed, candidates found) to progress
+     */
+    @Transactional
+    public RecommendationResponse generateRecommendations(String userId, Consumer<String> progress) {
         log.info("🎵 Generating recommendations for user: {}", userId);
         
         // Reset to first batch
         userBatchIndex.put(userId, 0);
         
         // Get recommendations for first batch
-        return getNextBatch(userId);
+        return getNextBatch(userId, progress);
     }
     
     /**
@@ -57,69 +95,28 @@ public class RecommendationService {
      */
     @Transactional
     public RecommendationResponse getNextBatch(String userId) {
+        return getNextBatch(userId, NO_PROGRESS);
+    }
+    
+    private RecommendationResponse getNextBatch(String userId, Consumer<String> progress) {
         int currentBatch = userBatchIndex.getOrDefault(userId, 0);
         
         log.info("📦 Getting batch {} for user: {}", currentBatch + 1, userId);
         
         try {
-            // 1. Get ALL liked tracks from database
-            List<Track> allLikedTracks = trackRepository.findByUserIdAndSource(userId, "spotify_liked");
-            
-            if (allLikedTracks.isEmpty()) {
-                throw new IllegalStateException("No liked tracks found. Please click 'Expand Dataset' first!");
-            }
-            
-            // 2. Calculate batch boundaries
-            int startIdx = currentBatch * BATCH_SIZE;
-            int endIdx = Math.min(startIdx + BATCH_SIZE, allLikedTracks.size());
-            
-            // Check if we've gone past all tracks
-            if (startIdx >= allLikedTracks.size()) {
-                throw new IllegalStateException("No more tracks to process. You've gone through all your liked songs! Click 'Generate' to start over.");
+            RecommendationResponse response = batchStore.await(userId, currentBatch);
+            if (response != null) {
+                log.info("⚡ Serving precomputed batch {} for user: {}", currentBatch + 1, userId);
+                progress.accept(String.format("Batch %d was precomputed", currentBatch + 1));
+            } else {
+                response = buildBatch(userId, currentBatch, progress);
+                batchStore.put(userId, currentBatch, response);
             }
             
-            // 3. Get current batch of tracks
-            List<Track> batchTracks = allLikedTracks.subList(startIdx, endIdx);
-            log.info("📊 Processing batch {} - tracks {} to {} (total: {})", 
-                    currentBatch + 1, startIdx + 1, endIdx, batchTracks.size());
-            
-            // 4. Get access token
-            // OPTION 1: Using SessionManager (if you have it)
-            String accessToken = sessionManager.getAccessToken(userId);
-            
-            // OPTION 2: If you DON'T have SessionManager:
-            // String accessToken = yourAuthService.getTokenForUser(userId);
-            // OR
-            // String accessToken = userRepository.findById(userId).orElseThrow().getSpotifyAccessToken();
-            
-            // 5. Fetch genres for this batch (if not already stored)
-            fetchAndUpdateGenres(batchTracks, accessToken);
-            
-            // 6. Generate recommendations using Last.fm
-            List<Track> recommendations = generateLastFmRecommendations(userId, batchTracks);
-            
-            log.info("✅ Generated {} recommendations for batch {}", recommendations.size(), currentBatch + 1);
-            
-            // 7. Update batch counter for next time
+            // Update batch counter for next time
             userBatchIndex.put(userId, currentBatch + 1);
             
-            // 8. Calculate batch info
-            int totalBatches = (int) Math.ceil((double) allLikedTracks.size() / BATCH_SIZE);
-            boolean hasMore = endIdx < allLikedTracks.size();
-            boolean hasPrevious = currentBatch > 0;
-            
-            // 9. Build response
-            return RecommendationResponse.builder()
-                    .success(true)
-                    .likedTracks(convertToDto(batchTracks))
-                    .recommendations(convertToDto(recommendations))
-                    .currentBatch(currentBatch + 1)
-                    .totalBatches(totalBatches)
-                    .hasMore(hasMore)
-                    .hasPrevious(hasPrevious)
-                    .message(String.format("📦 Showing batch %d of %d - Based on %d of your %d liked songs", 
-                            currentBatch + 1, totalBatches, batchTracks.size(), allLikedTracks.size()))
-                    .build();
+            return response;
                     
         } catch (IllegalStateException e) {
             log.warn("Batch processing issue: {}", e.getMessage());
@@ -148,6 +145,223 @@ public class RecommendationService {
         }
     }
     
+    /**
+     * Compute one batch of recommendations. Does not move the user's position,
+     * so it serves both on-demand requests and background warm-up.
+     */
+    private RecommendationResponse buildBatch(String userId, int batchIndex, Consumer<String> progress) {
+        progress.accept(String.format("Looking up genres for batch %d", batchIndex + 1));
+        BatchContext batch = prepareBatch(userId, batchIndex);
+        
+        // 6. Generate recommendations using Last.fm
+        List<Track> recommendations = generateLastFmRecommendations(userId, batch, progress);
+        
+        log.info("✅ Generated {} recommendations for batch {}", recommendations.size(), batchIndex + 1);
+        
+        // 7. Re-rank by the user's feedback model (no-op until there is enough feedback)
+        return toResponse(batch, reranker.rerank(userId, convertToDto(recommendations, Collections.emptyMap())));
+    }
+    
+    /**
+     * Load the liked tracks of a batch and their genres (steps 1-5 of a batch)
+     */
+    private BatchContext prepareBatch(String userId, int batchIndex) {
+        // 1. Get ALL liked tracks from database, newest first like the Spotify library
+        List<Track> allLikedTracks = trackRepository.findByUserIdAndSourceOrderByAddedAtDescIdAsc(userId, "spotify_liked");
+        
+        if (allLikedTracks.isEmpty()) {
+            throw new IllegalStateException("No liked tracks found. Please click 'Expand Dataset' first!");
+        }
+        
+        // 2. Calculate batch boundaries
+        int startIdx = batchIndex * BATCH_SIZE;
+        int endIdx = Math.min(startIdx + BATCH_SIZE, allLikedTracks.size());
+        
+        // Check if we've gone past all tracks
+        if (startIdx >= allLikedTracks.size()) {
+            throw new IllegalStateException("No more tracks to process. You've gone through all your liked songs! Click 'Generate' to start over.");
+        }
+        
+        // 3. Get current batch of tracks
+        List<Track> batchTracks = allLikedTracks.subList(startIdx, endIdx);
+        log.info("📊 Processing batch {} - tracks {} to {} (total: {})", 
+                batchIndex + 1, startIdx + 1, endIdx, batchTracks.size());
+        
+        // 4. Make sure the user is logged in to Spotify (the token itself is looked up per call)
+        if (!sessionManager.hasAccessToken(userId)) {
+            throw new IllegalStateException("No Spotify access token found. Please log in again.");
+        }
+        
+        // 5. Look up genres in the shared artist catalog (Spotify is only asked about missing/stale artists)
+        Map<String, String> artistGenres = artistGenreService.getGenres(
+                batchTracks.stream().map(Track::getArtistId).toList(), userId);
+        
+        // Keys of everything the user already likes, so it is never recommended back
+        Set<String> likedKeys = new HashSet<>();
+        for (Track liked : allLikedTracks) {
+            likedKeys.add(StringUtil.normalize(liked.getArtist()) + " - " + StringUtil.normalize(liked.getTrackName()));
+        }
+        
+        return new BatchContext(batchIndex, batchTracks, artistGenres, allLikedTracks.size(), likedKeys);
+    }
+    
+    private RecommendationResponse toResponse(BatchContext batch, List<TrackDto> recommendations) {
+        // 8. Calculate batch info
+        int totalBatches = (int) Math.ceil((double) batch.likedCount() / BATCH_SIZE);
+        boolean hasMore = (batch.index() + 1) * BATCH_SIZE < batch.likedCount();
+        boolean hasPrevious = batch.index() > 0;
+        
+        // 9. Build response
+        return RecommendationResponse.builder()
+                .success(true)
+                .likedTracks(convertToDto(batch.tracks(), batch.artistGenres()))
+                .recommendations(recommendations)
+                .currentBatch(batch.index() + 1)
+                .totalBatches(totalBatches)
+                .hasMore(hasMore)
+                .hasPrevious(hasPrevious)
+                .message(String.format("📦 Showing batch %d of %d - Based on %d of your %d liked songs", 
+                        batch.index() + 1, totalBatches, batch.tracks().size(), batch.likedCount()))
+                .build();
+    }
+    
+    /**
+     * Streaming variant of generateRecommendations. Sends the liked tracks of the
+     * first batch right away ("batch"), then each seed's new candidates as soon as
+     * that seed is done ("track", a preview) with a "progress" event per seed, and
+     * finally the whole batch ("done"). The "done" batch is ranked, cut and saved
+     * exactly like the regular response, so only its tracks carry ids and its
+     * order is the one to show; previews may include tracks that did not make it.
+     */
+    public Flux<ServerSentEvent<Object>> streamRecommendations(String userId) {
+        log.info("🎵 Streaming recommendations for user: {}", userId);
+        
+        // Reset to first batch
+        userBatchIndex.put(userId, 0);
+        
+        return Flux.defer(() -> {
+                    RecommendationResponse precomputed = batchStore.await(userId, 0);
+                    if (precomputed == null) {
+                        return streamBatch(userId, prepareBatch(userId, 0));
+                    }
+                    
+                    log.info("⚡ Streaming precomputed batch 1 for user: {}", userId);
+                    userBatchIndex.put(userId, 1);
+                    return Flux.concat(
+                            Mono.just(sse("batch", precomputed.toBuilder().recommendations(Collections.emptyList()).build())),
+                            Flux.fromIterable(precomputed.getRecommendations()).map(track -> sse("track", track)),
+                            Mono.just(sse("done", precomputed)));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("Error streaming recommendations: {}", e.getMessage(), e);
+                    String message = e instanceof IllegalStateException
+                            ? e.getMessage()
+                            : "Failed to generate recommendations: " + e.getMessage();
+                    return Mono.just(sse("error", Map.of("message", String.valueOf(message))));
+                });
+    }
+    
+    private Flux<ServerSentEvent<Object>> streamBatch(String userId, BatchContext batch) {
+        List<Track> seedTracks = selectSeeds(batch.tracks());
+        SparseVector profile = tasteProfile(batch);
+        Set<String> seenTracks = new HashSet<>(batch.likedKeys());
+        List<Track> candidates = new ArrayList<>();
+        ArtistTags artistTags = new ArtistTags(batch);
+        AtomicInteger seedsDone = new AtomicInteger();
+        
+        // Seeds run concurrently and are merged in seed order, like the regular path.
+        // publishOn keeps the work off Reactor's HTTP threads and handles one seed at a time.
+        Flux<ServerSentEvent<Object>> seedEvents = Flux.fromIterable(seedTracks)
+                .flatMapSequential(seedTrack -> collectSeedCandidates(seedTrack, tagsOf(seedTrack, batch.artistGenres()))
+                        .map(seedResult -> Map.entry(seedTrack.getArtist(), seedResult)), fanOutParallelism)
+                .publishOn(Schedulers.boundedElastic())
+                .concatMap(seed -> {
+                    List<Track> fresh = takeNew(userId, seed.getValue(), seenTracks);
+                    candidates.addAll(fresh);
+                    
+                    return artistTags.fill(fresh).flatMapMany(tagged -> {
+                        // Preview: within a seed, the tracks closest to the batch's genres go first
+                        List<TrackDto> preview = convertToDto(rankBySimilarity(userId, tagged, profile), Collections.emptyMap());
+                        Map<String, Object> progress = Map.of(
+                                "seedArtist", seed.getKey(),
+                                "seedsDone", seedsDone.incrementAndGet(),
+                                "seedsTotal", seedTracks.size(),
+                                "candidates", candidates.size());
+                        return Flux.fromIterable(preview)
+                                .map(track -> sse("track", track))
+                                .concatWith(Mono.just(sse("progress", progress)));
+                    });
+                });
+        
+        return Flux.concat(
+                Mono.just(sse("batch", toResponse(batch, Collections.emptyList()))),
+                seedEvents,
+                Mono.fromCallable(() -> {
+                    // Same ranking, cut-off and re-ranking as buildBatch
+                    List<Track> saved = rankAndSave(userId, batch, candidates);
+                    log.info("✅ Streamed {} recommendations for batch {}", saved.size(), batch.index() + 1);
+                    RecommendationResponse response = toResponse(batch,
+                            reranker.rerank(userId, convertToDto(saved, Collections.emptyMap())));
+                    batchStore.put(userId, batch.index(), response);
+                    userBatchIndex.put(userId, batch.index() + 1);
+                    return sse("done", response);
+                }));
+    }
+    
+    private static ServerSentEvent<Object> sse(String event, Object data) {
+        return ServerSentEvent.builder(data).event(event).build();
+    }
+    
+    /**
+     * Compute a batch ahead of time on the async executor
+     */
+    @Async
+    @Transactional
+    public CompletableFuture<RecommendationResponse> precomputeBatch(String userId, int batchIndex) {
+        log.info("🔥 Precomputing batch {} for user: {}", batchIndex + 1, userId);
+        return CompletableFuture.completedFuture(buildBatch(userId, batchIndex, NO_PROGRESS));
+    }
+    
+    /**
+     * Index of the batch the next call to getNextBatch will return
+     */
+    public int getCurrentBatchIndex(String userId) {
+        return userBatchIndex.getOrDefault(userId, 0);
+    }
+    
+    public int countBatches(String userId) {
+        long likedCount = trackRepository.countByUserIdAndSource(userId, "spotify_liked");
+        return (int) Math.ceil((double) likedCount / BATCH_SIZE);
+    }
+    
+    /**
+     * Drop precomputed batches, e.g. when the liked tracks changed or the user logged out
+     */
+    public void discardPrecomputed(String userId) {
+        batchStore.invalidate(userId);
+    }
+    
+    /**
+     * "More like this": the tracks closest to one of the user's tracks in the similarity index
+     */
+    public List<TrackDto> findSimilarTracks(String userId, Long trackId, int limit) {
+        Track track = trackRepository.findById(trackId)
+                .filter(t -> userId.equals(t.getUserId()))
+                .orElseThrow(() -> new CustomExceptions.NotFoundException("Track not found: " + trackId));
+        
+        return trackIndex.similarTo(track.getArtist(), track.getTrackName(), track.getTags(),
+                        Math.max(1, Math.min(limit, MAX_SIMILAR_TRACKS))).stream()
+                .map(similar -> TrackDto.builder()
+                        .trackName(similar.trackName())
+                        .artist(similar.artist())
+                        .tags(similar.tags())
+                        .source("embedding_similarity")
+                        .artistSeed(track.getArtist())
+                        .build())
+                .collect(Collectors.toList());
+    }
+    
     /**
      * Get previous batch of recommendations
      */
@@ -173,204 +387,275 @@ public class RecommendationService {
     }
     
     /**
-     * Fetch and update genres for a batch of tracks
+     * Generate recommendations using Last.fm API.
+     * Seed artists are fanned out concurrently; candidates are merged in seed order
+     * and then ranked by tag similarity to the batch, ties keeping seed order,
+     * so the output is stable from run to run.
+     *
+     * The calls themselves are non-blocking, but the caller's thread still waits
+     * for the whole fan-out to finish. Request threads that must not be held use
+     * the streaming endpoint or the job endpoints instead.
      */
-    private void fetchAndUpdateGenres(List<Track> tracks, String accessToken) {
-        // Get unique artist IDs that don't have genres yet
-        List<String> artistIds = tracks.stream()
-                .filter(t -> t.getArtistId() != null && !t.getArtistId().isEmpty())
-                .filter(t -> t.getTags() == null || t.getTags().isEmpty())
-                .map(Track::getArtistId)
-                .distinct()
-                .collect(Collectors.toList());
+    private List<Track> generateLastFmRecommendations(String userId, BatchContext batch, Consumer<String> progress) {
+        log.info("🎵 Generating Last.fm recommendations...");
         
-        if (artistIds.isEmpty()) {
-            log.info("All tracks in batch already have genres");
-            return;
-        }
+        List<Track> seedTracks = selectSeeds(batch.tracks());
+        progress.accept(String.format("Crawling Last.fm for %d seed artists", seedTracks.size()));
         
-        log.info("🎸 Fetching genres for {} artists...", artistIds.size());
+        // Fan out: seeds run concurrently, flatMapSequential hands results back in seed order
+        AtomicInteger seedsDone = new AtomicInteger();
+        AtomicInteger found = new AtomicInteger();
+        List<List<Map<String, String>>> seedResults = Flux.fromIterable(seedTracks)
+                .flatMapSequential(seedTrack -> collectSeedCandidates(seedTrack, tagsOf(seedTrack, batch.artistGenres())), fanOutParallelism)
+                .doOnNext(seedResult -> progress.accept(String.format("Processed %d of %d seed artists (%d similar tracks found)",
+                        seedsDone.incrementAndGet(), seedTracks.size(), found.addAndGet(seedResult.size()))))
+                .collectList()
+                .block();
         
-        try {
-            // Fetch genres in batch
-            Map<String, List<String>> genresMap = spotifyService.getGenresForArtists(artistIds, accessToken);
-            
-            // Update tracks with genres
-            for (Track track : tracks) {
-                if (track.getArtistId() != null && genresMap.containsKey(track.getArtistId())) {
-                    List<String> genres = genresMap.get(track.getArtistId());
-                    if (genres != null && !genres.isEmpty()) {
-                        track.setTags(String.join(", ", genres));
-                        trackRepository.save(track);
-                    }
-                }
-            }
-            
-            log.info("✅ Updated genres for {} tracks", tracks.size());
-            
-        } catch (Exception e) {
-            log.warn("Failed to fetch genres: {}", e.getMessage());
-            // Continue without genres - not critical
+        // Merge in seed order
+        List<Track> candidates = new ArrayList<>();
+        Set<String> seenTracks = new HashSet<>(batch.likedKeys()); // Avoid duplicates and liked tracks
+        
+        for (List<Map<String, String>> seedResult : seedResults) {
+            candidates.addAll(takeNew(userId, seedResult, seenTracks));
         }
+        new ArtistTags(batch).fill(candidates).block();
+        
+        List<Track> saved = rankAndSave(userId, batch, candidates);
+        
+        log.info("✅ Generated {} total recommendations", saved.size());
+        return saved;
     }
     
     /**
-     * Generate recommendations using Last.fm API
+     * Rank all candidates of a batch against its profile, keep the best and save them.
+     * Shared by the regular and the streaming path so both return the same batch.
      */
-    @Transactional
-    private List<Track> generateLastFmRecommendations(String userId, List<Track> batchTracks) {
-        log.info("🎵 Generating Last.fm recommendations...");
-        
-        List<Track> allRecommendations = new ArrayList<>();
+    private List<Track> rankAndSave(String userId, BatchContext batch, List<Track> candidates) {
+        List<Track> ranked = rankBySimilarity(userId, candidates, tasteProfile(batch));
+        return recommendationWriter.upsert(userId, ranked.subList(0, Math.min(ranked.size(), TARGET_RECOMMENDATIONS)));
+    }
+    
+    /**
+     * Take first N distinct artists from the batch
+     */
+    private List<Track> selectSeeds(List<Track> batchTracks) {
+        List<Track> seedTracks = new ArrayList<>();
         Set<String> processedArtists = new HashSet<>();
-        Set<String> seenTracks = new HashSet<>(); // Avoid duplicates
-        
-        // Take first N artists from the batch
         int artistsToProcess = Math.min(MAX_ARTISTS_TO_PROCESS, batchTracks.size());
         
-        for (int i = 0; i < artistsToProcess && allRecommendations.size() < TARGET_RECOMMENDATIONS; i++) {
+        for (int i = 0; i < artistsToProcess; i++) {
             Track seedTrack = batchTracks.get(i);
-            String seedArtist = seedTrack.getArtist();
-            
-            // Skip if we've already processed this artist
-            if (processedArtists.contains(seedArtist.toLowerCase())) {
+            if (processedArtists.add(seedTrack.getArtist().toLowerCase())) {
+                seedTracks.add(seedTrack);
+            }
+        }
+        return seedTracks;
+    }
+    
+    /**
+     * Unsaved recommendations for the candidates of one seed that were not seen yet
+     */
+    private List<Track> takeNew(String userId, List<Map<String, String>> seedResult, Set<String> seenTracks) {
+        List<Track> recommendations = new ArrayList<>();
+        
+        for (Map<String, String> trackData : seedResult) {
+            // A row without name or artist would fail the whole upsert batch
+            if (trackData.get("trackName") == null || trackData.get("artist") == null) {
                 continue;
             }
             
-            processedArtists.add(seedArtist.toLowerCase());
-            log.info("🎤 Processing artist: {}", seedArtist);
+            Track recommendation = toRecommendation(userId, trackData);
             
-            try {
-                // 1. Get similar artists from Last.fm
-                List<String> similarArtists = lastFmService.getSimilarArtists(seedArtist);
-                
-                if (similarArtists.isEmpty()) {
-                    log.debug("No similar artists found for: {}", seedArtist);
-                    continue;
-                }
-                
-                log.info("Found {} similar artists for {}", similarArtists.size(), seedArtist);
-                
-                // 2. Get top tracks from similar artists
-                int artistsProcessed = 0;
-                for (String similarArtist : similarArtists) {
-                    if (artistsProcessed >= SIMILAR_ARTISTS_PER_ARTIST) {
-                        break;
+            // Skip duplicates, by the same normalized key the tracks table is unique on
+            if (seenTracks.add(recommendation.getArtistKey() + " - " + recommendation.getTrackKey())) {
+                recommendations.add(recommendation);
+            }
+        }
+        return recommendations;
+    }
+    
+    /**
+     * Tag profile of the batch: the sum of the genre vectors of its liked tracks
+     */
+    private SparseVector tasteProfile(BatchContext batch) {
+        List<SparseVector> vectors = new ArrayList<>(batch.tracks().size());
+        for (Track track : batch.tracks()) {
+            vectors.add(tagVocabulary.vectorOf(tagsOf(track, batch.artistGenres())));
+        }
+        return SparseVector.sum(vectors);
+    }
+    
+    /**
+     * Candidates by cosine similarity of their tags to the batch profile plus their
+     * affinity to the user's long-term taste profile, best first. Stable, so
+     * candidates nothing is known about keep arrival order.
+     */
+    private List<Track> rankBySimilarity(String userId, List<Track> candidates, SparseVector profile) {
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        
+        // Non-negative float bits sort like the floats; inverting them and packing the
+        // position below puts the best score first and breaks ties by arrival order
+        long[] order = new long[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            Track candidate = candidates.get(i);
+            // Cosine is in [0, 1] and affinity in [-1, 1], shifted so the sum is never negative
+            float score = profile.cosine(tagVocabulary.vectorOf(candidate.getTags()))
+                    + tasteProfiles.affinity(userId, candidate) + 1;
+            order[i] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(score)) << 32) | i;
+        }
+        Arrays.sort(order);
+        
+        List<Track> ranked = new ArrayList<>(candidates.size());
+        for (long entry : order) {
+            ranked.add(candidates.get((int) entry));
+        }
+        return ranked;
+    }
+    
+    /**
+     * Collect candidate tracks for one seed artist without blocking.
+     * Must not touch the database, it completes on Reactor threads.
+     */
+    private Mono<List<Map<String, String>>> collectSeedCandidates(Track seedTrack, String seedTags) {
+        String seedArtist = seedTrack.getArtist();
+        log.info("🎤 Processing artist: {}", seedArtist);
+        
+        // 1. Get similar artists from the local graph, or Last.fm if the seed is not in it yet
+        Mono<List<Map<String, String>>> lastFmCandidates = similarArtists(seedArtist)
+                .flatMap(similarArtists -> {
+                    if (similarArtists.isEmpty()) {
+                        log.debug("No similar artists found for: {}", seedArtist);
+                        return Mono.just(Collections.<Map<String, String>>emptyList());
                     }
                     
-                    if (allRecommendations.size() >= TARGET_RECOMMENDATIONS) {
-                        break;
-                    }
+                    log.info("Found {} similar artists for {}", similarArtists.size(), seedArtist);
                     
-                    try {
-                        List<Map<String, String>> topTracks = lastFmService.getTopTracksForArtist(similarArtist, seedArtist);
-                        
-                        for (Map<String, String> trackData : topTracks) {
-                            String trackKey = (trackData.get("artist") + " - " + trackData.get("trackName")).toLowerCase();
-                            
-                            // Skip duplicates
-                            if (seenTracks.contains(trackKey)) {
-                                continue;
-                            }
-                            
-                            seenTracks.add(trackKey);
-                            
-                            // Create and save recommendation
-                            Track recommendation = new Track();
-                            recommendation.setUserId(userId);
-                            recommendation.setTrackName(trackData.get("trackName"));
-                            recommendation.setArtist(trackData.get("artist"));
-                            recommendation.setSource(trackData.get("source"));
-                            recommendation.setArtistSeed(trackData.get("artistSeed"));
-                            recommendation.setTags(trackData.getOrDefault("tags", ""));
-                            recommendation.setCreatedAt(LocalDateTime.now());
-                            
-                            Track saved = trackRepository.save(recommendation);
-                            allRecommendations.add(saved);
-                            
-                            if (allRecommendations.size() >= TARGET_RECOMMENDATIONS) {
-                                break;
-                            }
-                        }
-                        
-                        artistsProcessed++;
-                        
-                    } catch (Exception e) {
-                        log.warn("Failed to get tracks for {}: {}", similarArtist, e.getMessage());
-                    }
-                }
-                
-                // 3. Also try genre-based recommendations if we have tags
-                if (seedTrack.getTags() != null && !seedTrack.getTags().isEmpty() 
-                        && allRecommendations.size() < TARGET_RECOMMENDATIONS) {
+                    // 2. Get top tracks from similar artists
+                    Flux<List<Map<String, String>>> artistTracks = Flux.fromIterable(similarArtists)
+                            .take(SIMILAR_ARTISTS_PER_ARTIST)
+                            .flatMapSequential(similarArtist -> lastFmClient.getTopTracksForArtist(similarArtist, seedArtist));
                     
-                    String[] tags = seedTrack.getTags().split(",");
-                    if (tags.length > 0) {
-                        String primaryTag = tags[0].trim();
-                        
-                        try {
-                            List<Map<String, String>> genreTracks = lastFmService.getTopTracksForTag(primaryTag, primaryTag);
-                            
-                            for (Map<String, String> trackData : genreTracks) {
-                                String trackKey = (trackData.get("artist") + " - " + trackData.get("trackName")).toLowerCase();
-                                
-                                if (seenTracks.contains(trackKey)) {
-                                    continue;
-                                }
-                                
-                                seenTracks.add(trackKey);
-                                
-                                Track recommendation = new Track();
-                                recommendation.setUserId(userId);
-                                recommendation.setTrackName(trackData.get("trackName"));
-                                recommendation.setArtist(trackData.get("artist"));
-                                recommendation.setSource(trackData.get("source"));
-                                recommendation.setTags(trackData.getOrDefault("tags", ""));
-                                recommendation.setGenreSeed(trackData.get("genreSeed"));
-                                recommendation.setCreatedAt(LocalDateTime.now());
-                                
-                                Track saved = trackRepository.save(recommendation);
-                                allRecommendations.add(saved);
-                                
-                                if (allRecommendations.size() >= TARGET_RECOMMENDATIONS) {
-                                    break;
-                                }
-                            }
-                        } catch (Exception e) {
-                            log.warn("Failed to get genre tracks for {}: {}", primaryTag, e.getMessage());
-                        }
-                    }
+                    // 3. Also try genre-based recommendations if we have tags
+                    return Flux.mergeSequential(artistTracks, genreCandidates(seedTags))
+                            .flatMapIterable(tracks -> tracks)
+                            .collectList();
+                })
+                .onErrorResume(e -> {
+                    log.warn("Error processing artist {}: {}", seedArtist, e.getMessage());
+                    return Mono.just(Collections.<Map<String, String>>emptyList());
+                });
+        
+        // 4. Plus the seed's nearest neighbours in the local track index, no upstream calls needed
+        return lastFmCandidates.zipWith(indexCandidates(seedTrack, seedTags), (fromLastFm, fromIndex) -> {
+            List<Map<String, String>> candidates = new ArrayList<>(fromLastFm);
+            candidates.addAll(fromIndex);
+            return candidates;
+        });
+    }
+    
+    /**
+     * Tracks by other artists that are closest to the seed track in the similarity index
+     */
+    private Mono<List<Map<String, String>>> indexCandidates(Track seedTrack, String seedTags) {
+        return Mono.fromSupplier(() -> {
+            String seedArtistKey = StringUtil.normalize(seedTrack.getArtist());
+            List<Map<String, String>> candidates = new ArrayList<>();
+            
+            for (TrackSimilarityIndex.SimilarTrack similar : trackIndex.similarTo(
+                    seedTrack.getArtist(), seedTrack.getTrackName(), seedTags, INDEX_NEIGHBOURS)) {
+                if (candidates.size() >= INDEX_TRACKS_PER_SEED) {
+                    break;
+                }
+                if (StringUtil.normalize(similar.artist()).equals(seedArtistKey)) {
+                    continue;
                 }
                 
-            } catch (Exception e) {
-                log.warn("Error processing artist {}: {}", seedArtist, e.getMessage());
+                Map<String, String> trackData = new HashMap<>();
+                trackData.put("trackName", similar.trackName());
+                trackData.put("artist", similar.artist());
+                trackData.put("source", "embedding_similarity");
+                trackData.put("artistSeed", seedTrack.getArtist());
+                trackData.put("tags", similar.tags());
+                candidates.add(trackData);
             }
+            return candidates;
+        });
+    }
+    
+    /**
+     * Similar artists for a seed. Known artists are answered from the local graph;
+     * Last.fm is only asked about new or stale ones, and its answer grows the graph.
+     */
+    private Mono<List<String>> similarArtists(String seedArtist) {
+        if (artistGraph.isExpanded(seedArtist)) {
+            return Mono.just(artistGraph.similarArtists(seedArtist, SIMILAR_ARTISTS_FROM_GRAPH));
+        }
+        return lastFmClient.getSimilarArtists(seedArtist)
+                .doOnNext(similar -> artistGraph.record(seedArtist, similar));
+    }
+    
+    /**
+     * Top tracks for the seed track's primary genre, if it has one
+     */
+    private Mono<List<Map<String, String>>> genreCandidates(String seedTags) {
+        if (seedTags == null || seedTags.isEmpty()) {
+            return Mono.just(Collections.emptyList());
         }
         
-        log.info("✅ Generated {} total recommendations", allRecommendations.size());
-        return allRecommendations;
+        String primaryTag = seedTags.split(",")[0].trim();
+        return lastFmClient.getTopTracksForTag(primaryTag, primaryTag);
+    }
+    
+    /**
+     * Build an unsaved recommendation Track from Last.fm track data
+     */
+    private Track toRecommendation(String userId, Map<String, String> trackData) {
+        Track recommendation = new Track();
+        recommendation.setUserId(userId);
+        recommendation.setTrackName(trackData.get("trackName"));
+        recommendation.setArtist(trackData.get("artist"));
+        recommendation.setArtistKey(StringUtil.normalize(trackData.get("artist")));
+        recommendation.setTrackKey(StringUtil.normalize(trackData.get("trackName")));
+        recommendation.setSource(trackData.get("source"));
+        recommendation.setArtistSeed(trackData.get("artistSeed"));
+        recommendation.setGenreSeed(trackData.get("genreSeed"));
+        recommendation.setTags(trackData.getOrDefault("tags", ""));
+        recommendation.setCreatedAt(LocalDateTime.now());
+        return recommendation;
+    }
+    
+    /**
+     * Catalog genres for the track's artist, falling back to the tags stored on
+     * the row (Last.fm tags on recommendations, genres written by older versions)
+     */
+    private String tagsOf(Track track, Map<String, String> artistGenres) {
+        String genres = track.getArtistId() != null ? artistGenres.get(track.getArtistId()) : null;
+        return genres != null && !genres.isEmpty() ? genres : track.getTags();
     }
     
     /**
      * Convert Track entities to DTOs
      */
-    private List<TrackDto> convertToDto(List<Track> tracks) {
+    private List<TrackDto> convertToDto(List<Track> tracks, Map<String, String> artistGenres) {
         return tracks.stream()
-                .map(this::toDto)
+                .map(track -> toDto(track, tagsOf(track, artistGenres)))
                 .collect(Collectors.toList());
     }
     
     /**
      * Convert single Track to DTO
      */
-    private TrackDto toDto(Track track) {
+    private TrackDto toDto(Track track, String tags) {
         return TrackDto.builder()
                 .id(track.getId())
                 .trackName(track.getTrackName())
                 .artist(track.getArtist())
                 .album(track.getAlbum())
                 .year(track.getYear())
-                .tags(track.getTags())
+                .tags(tags)
                 .albumImage(track.getAlbumImage())
                 .source(track.getSource())
                 .artistSeed(track.getArtistSeed())
@@ -378,4 +663,49 @@ public class RecommendationService {
                 .spotifyId(track.getSpotifyId())
                 .build();
     }
-}
\ No newline at end of file
+    
+    private record BatchContext(int index, List<Track> tracks, Map<String, String> artistGenres, int likedCount,
+                                Set<String> likedKeys) {}
+    
+    /**
+     * Tags for the candidates of one batch that came without any, so they can be compared
+     * to the profile. Artists of the batch reuse the tags already stored for them; any other
+     * artist is asked of Last.fm once, however many seeds and tracks it turns up in.
+     */
+    private final class ArtistTags {
+        
+        private final Map<String, String> stored = new HashMap<>();
+        private final Map<String, Mono<String>> lookups = new ConcurrentHashMap<>();
+        
+        ArtistTags(BatchContext batch) {
+            for (Track track : batch.tracks()) {
+                String tags = tagsOf(track, batch.artistGenres());
+                if (tags != null && !tags.isEmpty()) {
+                    stored.putIfAbsent(StringUtil.normalize(track.getArtist()), tags);
+                }
+            }
+        }
+        
+        /**
+         * The same candidates, with tags set on those that had none and whose artist has some
+         */
+        Mono<List<Track>> fill(List<Track> candidates) {
+            return Flux.fromIterable(candidates)
+                    .filter(candidate -> candidate.getTags() == null || candidate.getTags().isEmpty())
+                    .flatMap(candidate -> of(candidate.getArtist()).doOnNext(candidate::setTags), fanOutParallelism)
+                    .then(Mono.just(candidates));
+        }
+        
+        private Mono<String> of(String artist) {
+            String key = StringUtil.normalize(artist);
+            String tags = stored.get(key);
+            if (tags != null) {
+                return Mono.just(tags);
+            }
+            return lookups.computeIfAbsent(key, ignored -> lastFmClient.getArtistTags(artist)
+                    .filter(artistTags -> !artistTags.isEmpty())
+                    .map(artistTags -> String.join(", ", artistTags))
+                    .cache());
+        }
+    }
+}
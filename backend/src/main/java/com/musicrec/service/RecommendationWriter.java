@@ -0,0 +1,169 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.musicrec.entity.Track;
+import com.musicrec.repository.TrackRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stores generated recommendations. Rows are keyed on (userId, artistKey, trackKey),
+ * so a track recommended again refreshes its existing row instead of adding another
+ * one; its id, and any feedback pointing at it, stay the same.
+ * New rows take their ids from track_seq in whole blocks, the same way Hibernate's
+ * pooled optimizer does, so one sequence call covers up to a block of inserts.
+ *
+ * A user's upserts run one at a time, each in its own transaction that commits
+ * before the next starts: the new-or-existing decision cannot see rows another
+ * transaction has not committed yet, so overlapping writers would collide on the key.
+ */
+@Service
+@Slf4j
+public class RecommendationWriter {
+    
+    // Parameters are cast so H2 knows their types inside the USING subquery
+    private static final String UPSERT_SQL = """
+        MERGE INTO tracks t
+        USING (SELECT CAST(? AS BIGINT) AS id, CAST(? AS VARCHAR) AS user_id, CAST(? AS VARCHAR) AS artist_key, CAST(? AS VARCHAR) AS track_key,
+                      CAST(? AS VARCHAR) AS track_name, CAST(? AS VARCHAR) AS artist, CAST(? AS VARCHAR) AS source,
+                      CAST(? AS VARCHAR) AS artist_seed, CAST(? AS VARCHAR) AS genre_seed, CAST(? AS VARCHAR) AS tags,
+                      CAST(? AS TIMESTAMP) AS created_at) s
+        ON t.user_id = s.user_id AND t.artist_key = s.artist_key AND t.track_key = s.track_key
+        WHEN MATCHED THEN UPDATE SET
+            source = s.source, artist_seed = s.artist_seed, genre_seed = s.genre_seed, tags = s.tags, created_at = s.created_at
+        WHEN NOT MATCHED THEN INSERT
+            (id, user_id, artist_key, track_key, track_name, artist, source, artist_seed, genre_seed, tags, created_at)
+            VALUES (s.id, s.user_id, s.artist_key, s.track_key, s.track_name, s.artist, s.source,
+                    s.artist_seed, s.genre_seed, s.tags, s.created_at)
+        """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TrackRepository trackRepository;
+    private final StatsService statsService;
+    private final TransactionTemplate writeTransaction;
+    private final Cache<String, Lock> userLocks = Caffeine.newBuilder()
+        .weakValues()
+        .build();
+    
+    public RecommendationWriter(JdbcTemplate jdbcTemplate,
+                                TrackRepository trackRepository,
+                                StatsService statsService,
+                                PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.trackRepository = trackRepository;
+        this.statsService = statsService;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    /**
+     * Upsert a batch of unsaved recommendations in one JDBC batch and return the
+     * stored rows (with ids) in the same order, one per artist/track key
+     */
+    public List<Track> upsert(String userId, List<Track> recommendations) {
+        if (recommendations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        List<Track> stored;
+        Lock lock = userLocks.get(userId, key -> new ReentrantLock());
+        lock.lock();
+        try {
+            try {
+                stored = writeTransaction.execute(status -> write(userId, recommendations));
+            } catch (DuplicateKeyException e) {
+                // Another instance committed one of the keys after it was looked up; it now reads as existing
+                log.info("Recommendation rows of user {} changed concurrently, upserting again", userId);
+                stored = writeTransaction.execute(status -> write(userId, recommendations));
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        // Only once committed, so the counters are not recomputed without the new rows
+        statsService.onTracksChanged(userId);
+        return stored;
+    }
+    
+    private List<Track> write(String userId, List<Track> recommendations) {
+        // Rows that already exist keep their id; every new key gets one from a sequence block.
+        // Only ids are read here, so no entity is loaded before the MERGE changes it
+        Map<String, Long> ids = new HashMap<>();
+        for (Object[] row : trackRepository.findIdsByUserIdAndTrackKeyIn(userId, trackKeys(recommendations))) {
+            ids.put(row[1] + "\n" + row[2], (Long) row[0]);
+        }
+        List<String> newKeys = recommendations.stream().map(RecommendationWriter::key)
+            .filter(key -> !ids.containsKey(key))
+            .distinct()
+            .toList();
+        Iterator<Long> newIds = allocateIds(newKeys.size()).iterator();
+        newKeys.forEach(key -> ids.put(key, newIds.next()));
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>();
+        for (Track track : recommendations) {
+            rows.add(new Object[] {
+                ids.get(key(track)), userId, track.getArtistKey(), track.getTrackKey(),
+                track.getTrackName(), track.getArtist(), track.getSource(),
+                track.getArtistSeed(), track.getGenreSeed(), track.getTags(),
+                now
+            });
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        
+        // Read the stored rows back, whether they were inserted or already there
+        Map<String, Track> storedByKey = new HashMap<>();
+        for (Track stored : trackRepository.findByUserIdAndTrackKeyIn(userId, trackKeys(recommendations))) {
+            storedByKey.put(key(stored), stored);
+        }
+        
+        Map<String, Track> result = new LinkedHashMap<>();
+        for (Track track : recommendations) {
+            Track stored = storedByKey.get(key(track));
+            if (stored != null) {
+                result.putIfAbsent(key(track), stored);
+            }
+        }
+        
+        log.debug("Upserted {} recommendations for user {}", result.size(), userId);
+        return new ArrayList<>(result.values());
+    }
+    
+    private static Set<String> trackKeys(List<Track> recommendations) {
+        Set<String> trackKeys = new HashSet<>();
+        recommendations.forEach(track -> trackKeys.add(track.getTrackKey()));
+        return trackKeys;
+    }
+    
+    /**
+     * count fresh track ids. Each sequence value is the top of a block of
+     * Track.ID_ALLOCATION_SIZE ids, as with the pooled optimizer, so this never
+     * hands out an id Hibernate uses.
+     */
+    private List<Long> allocateIds(int count) {
+        List<Long> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            Long hi = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR track_seq", Long.class);
+            for (long id = hi - Track.ID_ALLOCATION_SIZE + 1; id <= hi && ids.size() < count; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+    
+    private static String key(Track track) {
+        return track.getArtistKey() + "\n" + track.getTrackKey();
+    }
+}
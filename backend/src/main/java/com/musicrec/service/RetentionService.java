@@ -0,0 +1,139 @@
+package com.musicrec.service;
+
+import com.musicrec.repository.FeedbackRepository;
+import com.musicrec.repository.TrackRepository;
+import com.musicrec.repository.UserSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Periodic clean-up of data that only ever grows: old recommendations nobody
+ * reacted to, feedback left without a track, and stale sessions. Deletes run
+ * in small chunks, each in its own transaction, so no lock is held for long.
+ */
+@Service
+@Slf4j
+public class RetentionService {
+    
+    private final TrackRepository trackRepository;
+    private final FeedbackRepository feedbackRepository;
+    private final UserSessionRepository userSessionRepository;
+    private final StatsService statsService;
+    private final RecommendationBatchStore batchStore;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    private final Duration recommendationRetention;
+    private final Duration sessionRetention;
+    private final int chunkSize;
+    
+    public RetentionService(TrackRepository trackRepository,
+                            FeedbackRepository feedbackRepository,
+                            UserSessionRepository userSessionRepository,
+                            StatsService statsService,
+                            RecommendationBatchStore batchStore,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.retention.recommendations:30d}") Duration recommendationRetention,
+                            @Value("${app.retention.sessions:30d}") Duration sessionRetention,
+                            @Value("${app.retention.chunk-size:1000}") int chunkSize) {
+        this.trackRepository = trackRepository;
+        this.feedbackRepository = feedbackRepository;
+        this.userSessionRepository = userSessionRepository;
+        this.statsService = statsService;
+        this.batchStore = batchStore;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.recommendationRetention = recommendationRetention;
+        this.sessionRetention = sessionRetention;
+        this.chunkSize = chunkSize;
+    }
+    
+    @Scheduled(cron = "${app.retention.cron:0 30 4 * * *}")
+    public void scheduledRetention() {
+        runRetention();
+    }
+    
+    /**
+     * Delete everything past its retention and report how many rows were reclaimed
+     */
+    public RetentionReport runRetention() {
+        long started = System.currentTimeMillis();
+        LocalDateTime recommendationCutoff = LocalDateTime.now().minus(recommendationRetention);
+        
+        // Recommendations with feedback are kept: feedback points at them by id
+        Set<String> affectedUsers = new HashSet<>();
+        int tracks = deleteInChunks("tracks",
+            () -> trackRepository.findExpiredRecommendationIds(recommendationCutoff, PageRequest.of(0, chunkSize)),
+            ids -> {
+                affectedUsers.addAll(trackRepository.findUserIdsByIdIn(ids));
+                trackRepository.deleteAllByIdInBatch(ids);
+            });
+        
+        // Precomputed batches may hold the deleted rows, which would then fail on feedback
+        affectedUsers.forEach(batchStore::invalidate);
+        
+        int feedback = deleteInChunks("feedback",
+            () -> feedbackRepository.findOrphanedIds(PageRequest.of(0, chunkSize)),
+            feedbackRepository::deleteAllByIdInBatch);
+        
+        Integer sessions = transactionTemplate.execute(status ->
+            userSessionRepository.deleteOldSessions(LocalDateTime.now().minus(sessionRetention)));
+        record("user_sessions", sessions);
+        
+        RetentionReport report = new RetentionReport(tracks, feedback, sessions, System.currentTimeMillis() - started);
+        if (tracks > 0 || feedback > 0) {
+            statsService.onBulkDelete();
+        }
+        log.info("🧹 Retention reclaimed {} recommendations, {} orphaned feedback rows and {} sessions in {} ms",
+            report.tracks(), report.feedback(), report.sessions(), report.durationMs());
+        return report;
+    }
+    
+    private int deleteInChunks(String table, Supplier<List<Long>> nextChunk, Consumer<List<Long>> delete) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> {
+                List<Long> ids = nextChunk.get();
+                if (!ids.isEmpty()) {
+                    delete.accept(ids);
+                }
+                return ids.size();
+            });
+            total += deleted;
+        } while (deleted == chunkSize);
+        
+        record(table, total);
+        return total;
+    }
+    
+    private void record(String table, int rows) {
+        if (rows > 0) {
+            Counter.builder("retention.rows.deleted")
+                .tag("table", table)
+                .register(meterRegistry)
+                .increment(rows);
+        }
+    }
+    
+    public record RetentionReport(int tracks, int feedback, int sessions, long durationMs) {
+        public int total() {
+            return tracks + feedback + sessions;
+        }
+    }
+}
@@ -1,51 +1,84 @@
 package com.musicrec.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.musicrec.dto.LikedTracksResult;
+import com.musicrec.dto.SpotifyArtistsResponse;
+import com.musicrec.dto.SpotifySavedTracksPage;
 import com.musicrec.dto.SpotifyTrackDto;
 import com.musicrec.exception.CustomExceptions;
 import com.musicrec.util.RateLimiter;
+import com.musicrec.util.SessionManager;
+import com.musicrec.util.SingleFlight;
 import com.musicrec.util.StringUtil;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class SpotifyService {
     
-    @Value("${app.spotify.api-base-url}")
-    private String spotifyApiBaseUrl;
-    
-    @Value("${app.spotify.auth-base-url}")
-    private String spotifyAuthBaseUrl;
-    
     @Value("${spring.security.oauth2.client.registration.spotify.client-id}")
     private String clientId;
     
     @Value("${spring.security.oauth2.client.registration.spotify.client-secret}")
     private String clientSecret;
     
-    private final WebClient.Builder webClientBuilder;
+    // Shared clients with pooled keep-alive connections (see WebClientConfig)
+    private final WebClient apiClient;
+    private final WebClient accountsClient;
     private final RateLimiter rateLimiter;
+    private final SingleFlight singleFlight;
+    private final SessionManager sessionManager;
     
     private static final String RATE_LIMIT_KEY = "spotify_api";
-    private static final int MAX_REQUESTS = 10;
-    private static final long WINDOW_SECONDS = 1;
+    // Tokens this close to their expiry are refreshed before use instead of waiting for a 401
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(30);
+    private static final int LIKED_TRACKS_PAGE_SIZE = 50;
+    
+    // Liked-track pages requested at once during a full sync
+    @Value("${app.spotify.liked-tracks-prefetch-concurrency:4}")
+    private int likedTracksPrefetchConcurrency;
+    
+    public SpotifyService(@Qualifier("spotifyApiWebClient") WebClient apiClient,
+                          @Qualifier("spotifyAccountsWebClient") WebClient accountsClient,
+                          RateLimiter rateLimiter,
+                          SingleFlight singleFlight,
+                          SessionManager sessionManager,
+                          @Value("${app.rate-limit.spotify-calls-per-second:5}") int maxRequestsPerSecond) {
+        this.apiClient = apiClient;
+        this.accountsClient = accountsClient;
+        this.rateLimiter = rateLimiter;
+        this.singleFlight = singleFlight;
+        this.sessionManager = sessionManager;
+        // Burst of one second's worth, so a page fan-out can start at once
+        rateLimiter.configure(RATE_LIMIT_KEY, maxRequestsPerSecond, maxRequestsPerSecond);
+    }
     
     public Map<String, Object> exchangeCodeForToken(String code, String redirectUri) {
-        rateLimiter.checkRateLimit(RATE_LIMIT_KEY, MAX_REQUESTS, WINDOW_SECONDS);
+        rateLimiter.acquireBlocking(RATE_LIMIT_KEY, 1);
         
         String auth = Base64.getEncoder().encodeToString(
             (clientId + ":" + clientSecret).getBytes()
@@ -57,9 +90,9 @@ public class SpotifyService {
         formData.put("redirect_uri", redirectUri);
         
         try {
-            return webClientBuilder.build()
+            return accountsClient
                 .post()
-                .uri(spotifyAuthBaseUrl + "/api/token")
+                .uri("/api/token")
                 .header(HttpHeaders.AUTHORIZATION, "Basic " + auth)
                 .header(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded")
                 .bodyValue(buildFormData(formData))
@@ -72,14 +105,111 @@ public class SpotifyService {
         }
     }
     
+    /**
+     * Get a new access token for the user with their refresh token and store it.
+     * If the stored token is no longer rejectedToken, someone else already refreshed
+     * it and that token is returned instead; concurrent refreshes share one call.
+     */
+    public Mono<String> refreshAccessToken(String userId, String rejectedToken) {
+        Mono<String> refresh = Mono.fromCallable(() -> {
+                String current = sessionManager.getAccessToken(userId);
+                return current.equals(rejectedToken) ? null : current;
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .switchIfEmpty(Mono.defer(() -> requestNewAccessToken(userId)));
+        
+        return singleFlight.execute("spotify:refresh:" + userId, () -> refresh)
+            .onErrorMap(IllegalStateException.class,
+                e -> new CustomExceptions.InvalidTokenException("No Spotify session, please log in again"));
+    }
+    
+    private Mono<String> requestNewAccessToken(String userId) {
+        String refreshToken = sessionManager.getRefreshToken(userId);
+        if (refreshToken == null) {
+            return Mono.error(new CustomExceptions.InvalidTokenException("No Spotify refresh token, please log in again"));
+        }
+        
+        String auth = Base64.getEncoder().encodeToString(
+            (clientId + ":" + clientSecret).getBytes()
+        );
+        
+        return rateLimiter.acquire(RATE_LIMIT_KEY, 1)
+            .then(Mono.defer(() -> accountsClient
+                .post()
+                .uri("/api/token")
+                .header(HttpHeaders.AUTHORIZATION, "Basic " + auth)
+                .body(BodyInserters.fromFormData("grant_type", "refresh_token")
+                    .with("refresh_token", refreshToken))
+                .retrieve()
+                .bodyToMono(Map.class)))
+            .retryWhen(Retry.backoff(2, Duration.ofMillis(500)).filter(SpotifyService::isRetryable))
+            .publishOn(Schedulers.boundedElastic())
+            .map(response -> {
+                String accessToken = (String) response.get("access_token");
+                Number expiresIn = (Number) response.get("expires_in");
+                LocalDateTime expiresAt = expiresIn != null ? LocalDateTime.now().plusSeconds(expiresIn.longValue()) : null;
+                // Spotify only sometimes rotates the refresh token; null keeps the stored one
+                sessionManager.setTokens(userId, accessToken, (String) response.get("refresh_token"), expiresAt);
+                log.info("🔄 Refreshed Spotify token for user {}", userId);
+                return accessToken;
+            })
+            // A revoked or expired refresh token never works again, so drop the session instead of
+            // letting every sync and the background refresher retry it
+            .onErrorResume(SpotifyService::isInvalidGrant, e -> Mono.fromRunnable(() -> {
+                    log.info("Spotify refresh token of user {} is no longer valid, clearing the session", userId);
+                    sessionManager.clearSession(userId);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.<String>error(e)))
+            .onErrorMap(e -> e instanceof WebClientResponseException responseException
+                    && responseException.getStatusCode().is4xxClientError(),
+                e -> new CustomExceptions.InvalidTokenException("Spotify session expired, please log in again"));
+    }
+    
+    /**
+     * Run a call with the user's current access token. A token about to expire is
+     * refreshed first, and a call rejected with 401 is retried once with a new token,
+     * so long-running syncs keep going when the token expires halfway.
+     */
+    private <T> Mono<T> withAccessToken(String userId, Function<String, Mono<T>> call) {
+        return Mono.fromCallable(() -> sessionManager.getAccessToken(userId))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(token -> expiresSoon(userId) ? refreshAccessToken(userId, token) : Mono.just(token))
+            .flatMap(token -> call.apply(token)
+                .onErrorResume(SpotifyService::isUnauthorized, e -> {
+                    log.info("Spotify rejected the token of user {}, refreshing", userId);
+                    return refreshAccessToken(userId, token).flatMap(call);
+                }))
+            .onErrorMap(SpotifyService::isUnauthorized,
+                e -> new CustomExceptions.InvalidTokenException("Invalid or expired Spotify token"))
+            .onErrorMap(IllegalStateException.class,
+                e -> new CustomExceptions.InvalidTokenException(e.getMessage()));
+    }
+    
+    private boolean expiresSoon(String userId) {
+        LocalDateTime expiry = sessionManager.getTokenExpiry(userId);
+        return expiry != null && expiry.isBefore(LocalDateTime.now().plus(EXPIRY_MARGIN));
+    }
+    
+    private static boolean isUnauthorized(Throwable e) {
+        return e instanceof WebClientResponseException responseException
+            && responseException.getStatusCode() == HttpStatus.UNAUTHORIZED;
+    }
+    
+    private static boolean isInvalidGrant(Throwable e) {
+        return e instanceof WebClientResponseException responseException
+            && responseException.getStatusCode() == HttpStatus.BAD_REQUEST
+            && responseException.getResponseBodyAsString().contains("invalid_grant");
+    }
+    
     @Cacheable(value = "spotifyData", key = "'user_' + #accessToken.hashCode()")
     public Map<String, Object> getCurrentUser(String accessToken) {
-        rateLimiter.checkRateLimit(RATE_LIMIT_KEY, MAX_REQUESTS, WINDOW_SECONDS);
+        rateLimiter.acquireBlocking(RATE_LIMIT_KEY, 1);
         
         try {
-            return webClientBuilder.build()
+            return apiClient
                 .get()
-                .uri(spotifyApiBaseUrl + "/me")
+                .uri("/me")
                 .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
                 .retrieve()
                 .bodyToMono(Map.class)
@@ -95,116 +225,238 @@ public class SpotifyService {
     }
     
     /**
-     * Fetch ALL liked tracks from Spotify without fetching genres.
-     * This is much faster and doesn't hit rate limits.
+     * Fetch liked tracks from Spotify without fetching genres, newest first.
+     * With addedAfter set, paging stops at the first track liked at or before
+     * that time, so an incremental sync only downloads what is new.
      * Genres can be fetched later in smaller batches if needed.
+     * progress gets a short status line after every page.
      */
-    public List<Map<String, Object>> getAllLikedTracks(String accessToken) {
-        List<Map<String, Object>> allTracks = new ArrayList<>();
+    public LikedTracksResult getLikedTracks(String userId, LocalDateTime addedAfter, Consumer<String> progress) {
+        List<SpotifyTrackDto> tracks = new ArrayList<>();
+        int total = 0;
         int offset = 0;
-        int limit = 50;
         boolean hasMore = true;
+        boolean complete = true;
         
-        log.info("Fetching all liked tracks from Spotify (without genres)...");
+        if (addedAfter == null) {
+            log.info("Fetching all liked tracks from Spotify (without genres)...");
+        } else {
+            log.info("Fetching liked tracks added after {}...", addedAfter);
+        }
         
         while (hasMore) {
-            rateLimiter.checkRateLimit(RATE_LIMIT_KEY, MAX_REQUESTS, WINDOW_SECONDS);
-            
             try {
-                String uri = String.format("%s/me/tracks?limit=%d&offset=%d",
-                    spotifyApiBaseUrl, limit, offset);
-                
-                Map<String, Object> response = webClientBuilder.build()
-                    .get()
-                    .uri(uri)
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .retryWhen(Retry.backoff(2, Duration.ofMillis(500)))
-                    .block();
+                SpotifySavedTracksPage response = fetchLikedTracksPage(userId, offset).block();
                 
-                if (response != null && response.containsKey("items")) {
-                    List<Map<String, Object>> items = (List<Map<String, Object>>) response.get("items");
+                if (response != null && response.items() != null) {
+                    total = response.total();
+                    boolean reachedKnown = false;
                     
-                    for (Map<String, Object> item : items) {
-                        Map<String, Object> track = (Map<String, Object>) item.get("track");
-                        if (track != null) {
-                            // FIXED: Don't fetch genres here - just process basic track info
-                            allTracks.add(processTrackBasic(track));
+                    for (SpotifyTrackDto row : toTrackRows(response)) {
+                        LocalDateTime addedAt = row.getAddedAt();
+                        if (addedAfter != null && addedAt != null && !addedAt.isAfter(addedAfter)) {
+                            reachedKnown = true;
+                            break;
                         }
+                        tracks.add(row);
                     }
                     
-                    String next = (String) response.get("next");
-                    hasMore = next != null;
-                    offset += limit;
-                    
-                    log.info("Fetched {} tracks so far...", allTracks.size());
+                    hasMore = response.next() != null && !reachedKnown;
+                    offset += LIKED_TRACKS_PAGE_SIZE;
                     
-                    // Add small delay between pagination calls to be nice to Spotify API
-                    if (hasMore) {
-                        Thread.sleep(100);
-                    }
+                    log.info("Fetched {} tracks so far...", tracks.size());
+                    progress.accept(String.format("Fetched %d new liked tracks from Spotify", tracks.size()));
                 } else {
                     hasMore = false;
                 }
-                
-            } catch (WebClientResponseException e) {
-                if (e.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    throw new CustomExceptions.InvalidTokenException("Invalid or expired Spotify token");
-                }
+            
+            } catch (CustomExceptions.InvalidTokenException e) {
+                throw e;
+            } catch (Exception e) {
                 log.error("Error fetching liked tracks at offset {}: {}", offset, e.getMessage());
                 hasMore = false;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("Sleep interrupted during pagination");
-                hasMore = false;
+                complete = false;
             }
         }
         
-        log.info("✅ Retrieved total of {} liked tracks (without genres)", allTracks.size());
-        return allTracks;
+        log.info("✅ Retrieved {} liked tracks (without genres), library size {}", tracks.size(), total);
+        return LikedTracksResult.builder()
+            .tracks(tracks)
+            .total(total)
+            .complete(complete)
+            .newestAddedAt(newestAddedAt(tracks))
+            .build();
+    }
+    
+    /**
+     * Fetch every liked track and hand each page to pageHandler as it arrives,
+     * instead of collecting the whole library in memory.
+     * The first page reports the library size, so the remaining offsets are
+     * requested concurrently (bounded, through the shared rate limiter) rather
+     * than by following next links one at a time. Pages arrive in any order.
+     * pageHandler runs on the calling thread, so it can write to the database
+     * inside the caller's transaction. The returned result has no tracks.
+     * progress gets a short status line after every page.
+     */
+    public LikedTracksResult streamAllLikedTracks(String userId, Consumer<List<SpotifyTrackDto>> pageHandler,
+                                                  Consumer<String> progress) {
+        AtomicBoolean complete = new AtomicBoolean(true);
+        
+        SpotifySavedTracksPage firstPage = fetchLikedTracksPage(userId, 0)
+            .onErrorResume(e -> !(e instanceof CustomExceptions.InvalidTokenException), e -> skipPage(0, e, complete))
+            .block();
+        
+        if (firstPage == null || firstPage.items() == null) {
+            return LikedTracksResult.builder()
+                .tracks(List.of())
+                .complete(false)
+                .build();
+        }
+        
+        int total = firstPage.total();
+        int pageCount = (total + LIKED_TRACKS_PAGE_SIZE - 1) / LIKED_TRACKS_PAGE_SIZE;
+        log.info("Fetching {} liked tracks from Spotify in {} pages, {} at a time...",
+            total, pageCount, likedTracksPrefetchConcurrency);
+        
+        // Newest first, so the newest track of the library is on the first page
+        List<SpotifyTrackDto> firstRows = toTrackRows(firstPage);
+        LocalDateTime newest = newestAddedAt(firstRows);
+        pageHandler.accept(firstRows);
+        int fetched = firstRows.size();
+        progress.accept(String.format("Fetched %d of %d liked tracks from Spotify", fetched, total));
+        
+        Iterable<List<SpotifyTrackDto>> remainingPages = Flux.range(1, Math.max(0, pageCount - 1))
+            .map(page -> page * LIKED_TRACKS_PAGE_SIZE)
+            .flatMap(offset -> fetchLikedTracksPage(userId, offset)
+                    .map(this::toTrackRows)
+                    .onErrorResume(e -> !(e instanceof CustomExceptions.InvalidTokenException),
+                        e -> skipPage(offset, e, complete)),
+                likedTracksPrefetchConcurrency)
+            .toIterable(likedTracksPrefetchConcurrency);
+        
+        for (List<SpotifyTrackDto> rows : remainingPages) {
+            pageHandler.accept(rows);
+            fetched += rows.size();
+            log.info("Fetched {} of {} tracks so far...", fetched, total);
+            progress.accept(String.format("Fetched %d of %d liked tracks from Spotify", fetched, total));
+        }
+        
+        log.info("✅ Retrieved {} liked tracks (without genres), library size {}", fetched, total);
+        return LikedTracksResult.builder()
+            .tracks(List.of())
+            .total(total)
+            .complete(complete.get())
+            .newestAddedAt(newest)
+            .build();
+    }
+    
+    /**
+     * One page of /me/tracks, decoded straight into typed records.
+     * The rate limit permit is taken on subscription, so retries and
+     * concurrent pages all go through the shared limiter.
+     */
+    private Mono<SpotifySavedTracksPage> fetchLikedTracksPage(String userId, int offset) {
+        return withAccessToken(userId, accessToken -> rateLimiter.acquire(RATE_LIMIT_KEY, 1)
+            .then(Mono.defer(() -> apiClient
+                .get()
+                .uri("/me/tracks?limit={limit}&offset={offset}", LIKED_TRACKS_PAGE_SIZE, offset)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .retrieve()
+                .bodyToMono(SpotifySavedTracksPage.class)))
+            .retryWhen(Retry.backoff(2, Duration.ofMillis(500)).filter(SpotifyService::isRetryable)));
+    }
+    
+    private <T> Mono<T> skipPage(int offset, Throwable e, AtomicBoolean complete) {
+        log.error("Error fetching liked tracks at offset {}: {}", offset, e.getMessage());
+        complete.set(false);
+        return Mono.empty();
+    }
+    
+    /**
+     * Basic track info plus added_at for every item of a /me/tracks page
+     */
+    private List<SpotifyTrackDto> toTrackRows(SpotifySavedTracksPage page) {
+        List<SpotifyTrackDto> rows = new ArrayList<>();
+        if (page.items() == null) {
+            return rows;
+        }
+        
+        for (SpotifySavedTracksPage.Item item : page.items()) {
+            if (item != null && item.track() != null) {
+                // FIXED: Don't fetch genres here - just process basic track info
+                SpotifyTrackDto processed = processTrackBasic(item.track());
+                processed.setAddedAt(parseAddedAt(item.addedAt()));
+                rows.add(processed);
+            }
+        }
+        return rows;
+    }
+    
+    private LocalDateTime newestAddedAt(List<SpotifyTrackDto> rows) {
+        return rows.stream()
+            .map(SpotifyTrackDto::getAddedAt)
+            .filter(Objects::nonNull)
+            .max(Comparator.naturalOrder())
+            .orElse(null);
+    }
+    
+    private static boolean isRetryable(Throwable e) {
+        return !(e instanceof WebClientResponseException responseException)
+            || !responseException.getStatusCode().is4xxClientError()
+            || responseException.getStatusCode().value() == 429;
+    }
+    
+    /**
+     * Spotify added_at is an ISO-8601 UTC timestamp, stored as UTC LocalDateTime
+     */
+    private LocalDateTime parseAddedAt(String addedAt) {
+        if (addedAt == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(addedAt).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
     
     /**
      * Process track without fetching additional data.
      * This is MUCH faster and doesn't cause rate limit issues.
      */
-    private Map<String, Object> processTrackBasic(Map<String, Object> track) {
-        Map<String, Object> processed = new HashMap<>();
+    private SpotifyTrackDto processTrackBasic(SpotifySavedTracksPage.Track track) {
+        SpotifyTrackDto processed = new SpotifyTrackDto();
         
-        String trackName = StringUtil.sanitize((String) track.get("name"));
-        processed.put("trackName", trackName);
-        processed.put("spotifyId", track.get("id"));
+        processed.setTrackName(StringUtil.sanitize(track.name()));
+        processed.setSpotifyId(track.id());
         
         // Get artist info
-        List<Map<String, Object>> artists = (List<Map<String, Object>>) track.get("artists");
-        if (artists != null && !artists.isEmpty()) {
-            String artistName = StringUtil.sanitize((String) artists.get(0).get("name"));
-            processed.put("artist", artistName);
+        List<SpotifySavedTracksPage.Artist> artists = track.artists();
+        if (artists != null && !artists.isEmpty() && artists.get(0) != null) {
+            processed.setArtist(StringUtil.sanitize(artists.get(0).name()));
             
             // Store artist ID for later genre fetching if needed
-            String artistId = (String) artists.get(0).get("id");
-            processed.put("artistId", artistId);
+            processed.setArtistId(artists.get(0).id());
         }
         
         // Get album info
-        Map<String, Object> album = (Map<String, Object>) track.get("album");
+        SpotifySavedTracksPage.Album album = track.album();
         if (album != null) {
-            processed.put("album", StringUtil.sanitize((String) album.get("name")));
+            processed.setAlbum(StringUtil.sanitize(album.name()));
             
-            String releaseDate = (String) album.get("release_date");
+            String releaseDate = album.releaseDate();
             if (releaseDate != null && releaseDate.length() >= 4) {
-                processed.put("year", releaseDate.substring(0, 4));
+                processed.setYear(releaseDate.substring(0, 4));
             }
             
-            List<Map<String, Object>> images = (List<Map<String, Object>>) album.get("images");
-            if (images != null && !images.isEmpty()) {
-                processed.put("albumImage", images.get(0).get("url"));
+            List<SpotifySavedTracksPage.Image> images = album.images();
+            if (images != null && !images.isEmpty() && images.get(0) != null) {
+                processed.setAlbumImage(images.get(0).url());
             }
         }
         
         // Don't fetch genres here - empty tags for now
-        processed.put("tags", "");
+        processed.setTags("");
         
         return processed;
     }
@@ -214,7 +466,7 @@ public class SpotifyService {
      * Call this ONLY when generating recommendations, not during initial load.
      * Process in batches to avoid rate limits.
      */
-    public Map<String, List<String>> getGenresForArtists(List<String> artistIds, String accessToken) {
+    public Map<String, List<String>> getGenresForArtists(List<String> artistIds, String userId) {
         Map<String, List<String>> artistGenres = new HashMap<>();
         
         log.info("Fetching genres for {} artists in batches...", artistIds.size());
@@ -228,36 +480,20 @@ public class SpotifyService {
             // When batch is full or we're at the end, make API call
             if (batch.size() == 50 || i == artistIds.size() - 1) {
                 try {
-                    rateLimiter.checkRateLimit(RATE_LIMIT_KEY, MAX_REQUESTS, WINDOW_SECONDS);
+                    // Concurrent requests for the same set of artists share one Spotify call
+                    List<String> batchIds = new ArrayList<>(batch);
+                    String flightKey = "spotify:artists:" + batchIds.stream().sorted().collect(Collectors.joining(","));
                     
-                    String ids = String.join(",", batch);
-                    Map<String, Object> response = webClientBuilder.build()
-                        .get()
-                        .uri(spotifyApiBaseUrl + "/artists?ids=" + ids)
-                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
-                        .retrieve()
-                        .bodyToMono(Map.class)
+                    Map<String, List<String>> batchGenres = singleFlight
+                        .execute(flightKey, () -> fetchGenreBatch(batchIds, userId))
                         .block();
                     
-                    if (response != null && response.containsKey("artists")) {
-                        List<Map<String, Object>> artists = (List<Map<String, Object>>) response.get("artists");
-                        for (Map<String, Object> artist : artists) {
-                            if (artist != null) {
-                                String artistId = (String) artist.get("id");
-                                List<String> genres = (List<String>) artist.getOrDefault("genres", Collections.emptyList());
-                                artistGenres.put(artistId, genres.stream()
-                                    .map(String::toLowerCase)
-                                    .limit(3)
-                                    .toList());
-                            }
-                        }
+                    if (batchGenres != null) {
+                        artistGenres.putAll(batchGenres);
                     }
                     
                     batch.clear();
-                    
-                    // Small delay between batches
-                    Thread.sleep(100);
-                    
+                
                 } catch (Exception e) {
                     log.warn("Error fetching genres for batch: {}", e.getMessage());
                     batch.clear();
@@ -270,11 +506,38 @@ public class SpotifyService {
     }
     
     /**
-     * OLD METHOD - kept for backward compatibility but doesn't fetch genres anymore
+     * One call to Spotify's several-artists endpoint (max 50 ids); every requested
+     * id is in the result, with no genres if Spotify does not know the artist
      */
-    @Deprecated
-    private Map<String, Object> processTrack(Map<String, Object> track, String accessToken) {
-        return processTrackBasic(track);
+    private Mono<Map<String, List<String>>> fetchGenreBatch(List<String> artistIds, String userId) {
+        return withAccessToken(userId, accessToken -> rateLimiter.acquire(RATE_LIMIT_KEY, 1)
+            .then(Mono.defer(() -> apiClient
+                .get()
+                .uri("/artists?ids=" + String.join(",", artistIds))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .retrieve()
+                .bodyToMono(SpotifyArtistsResponse.class))))
+            .map(response -> {
+                Map<String, List<String>> artistGenres = new HashMap<>();
+                if (response.artists() != null) {
+                    for (SpotifyArtistsResponse.Artist artist : response.artists()) {
+                        // Unknown ids come back as null entries
+                        if (artist != null && artist.id() != null) {
+                            List<String> genres = artist.genres() != null ? artist.genres() : Collections.emptyList();
+                            artistGenres.put(artist.id(), genres.stream()
+                                .map(String::toLowerCase)
+                                .limit(3)
+                                .toList());
+                        }
+                    }
+                }
+                // Ids missing from a successful answer are unknown or removed artists: record them
+                // as having no genres so the catalog does not ask for them again on every batch
+                for (String artistId : artistIds) {
+                    artistGenres.putIfAbsent(artistId, Collections.emptyList());
+                }
+                return artistGenres;
+            });
     }
     
     private String buildFormData(Map<String, String> data) {
@@ -0,0 +1,81 @@
+package com.musicrec.service;
+
+import com.musicrec.entity.User;
+import com.musicrec.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Refreshes Spotify access tokens of active users shortly before they expire, so
+ * syncs and recommendation runs rarely meet an expired token. Each token is due at
+ * a per-user random point in the jitter window before the lead time, which spreads
+ * the refreshes of users who logged in together over several runs.
+ */
+@Service
+@Slf4j
+public class SpotifyTokenRefresher {
+    
+    private final UserRepository userRepository;
+    private final SpotifyService spotifyService;
+    private final Duration leadTime;
+    private final Duration jitter;
+    private final Duration activeWindow;
+    private final int concurrency;
+    
+    public SpotifyTokenRefresher(UserRepository userRepository,
+                                 SpotifyService spotifyService,
+                                 @Value("${app.spotify.token-refresh.lead-time:5m}") Duration leadTime,
+                                 @Value("${app.spotify.token-refresh.jitter:5m}") Duration jitter,
+                                 @Value("${app.spotify.token-refresh.active-window:1d}") Duration activeWindow,
+                                 @Value("${app.spotify.token-refresh.concurrency:4}") int concurrency) {
+        this.userRepository = userRepository;
+        this.spotifyService = spotifyService;
+        this.leadTime = leadTime;
+        this.jitter = jitter;
+        this.activeWindow = activeWindow;
+        this.concurrency = concurrency;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.spotify.token-refresh.interval-ms:60000}",
+               initialDelayString = "${app.spotify.token-refresh.initial-delay-ms:30000}")
+    public void refreshExpiringTokens() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<User> due = userRepository
+                .findActiveWithTokenExpiringBefore(now.plus(leadTime).plus(jitter), now.minus(activeWindow))
+                .stream()
+                .filter(user -> !refreshAt(user).isAfter(now))
+                .toList();
+            if (due.isEmpty()) {
+                return;
+            }
+            
+            Long refreshed = Flux.fromIterable(due)
+                .flatMap(user -> spotifyService.refreshAccessToken(user.getSpotifyId(), user.getAccessToken())
+                        .onErrorResume(e -> {
+                            log.warn("Could not refresh Spotify token of user {}: {}", user.getSpotifyId(), e.getMessage());
+                            return Mono.empty();
+                        }),
+                    concurrency)
+                .count()
+                .block();
+            log.info("🔄 Refreshed {} of {} expiring Spotify tokens", refreshed, due.size());
+        } catch (Exception e) {
+            log.warn("Spotify token refresh run failed: {}", e.getMessage());
+        }
+    }
+    
+    private LocalDateTime refreshAt(User user) {
+        long offset = Math.floorMod(Objects.hash(user.getSpotifyId(), user.getTokenExpiry()), Math.max(1, jitter.toSeconds()));
+        return user.getTokenExpiry().minus(leadTime).minusSeconds(offset);
+    }
+}
@@ -0,0 +1,122 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.musicrec.dto.StatsResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user library and feedback counts. They are read with one aggregate query
+ * (answered from the idx_user_source_artist and idx_user_type indexes) and kept
+ * as materialized counters: feedback adjusts them in place, track writes drop
+ * them so the next call re-reads, and the TTL bounds any drift.
+ */
+@Service
+@Slf4j
+public class StatsService {
+    
+    private static final String STATS_SQL = """
+        SELECT t.liked, t.recommended, t.artists, f.likes, f.dislikes
+        FROM (SELECT COUNT(CASE WHEN source = 'spotify_liked' THEN 1 END) AS liked,
+                     COUNT(CASE WHEN source <> 'spotify_liked' THEN 1 END) AS recommended,
+                     COUNT(DISTINCT artist) AS artists
+              FROM tracks WHERE user_id = ?) t
+        CROSS JOIN
+             (SELECT COUNT(CASE WHEN feedback_type = 'like' THEN 1 END) AS likes,
+                     COUNT(CASE WHEN feedback_type = 'dislike' THEN 1 END) AS dislikes
+              FROM feedback WHERE user_id = ?) f
+        """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean cacheEnabled;
+    private final Cache<String, Counters> counters;
+    
+    public StatsService(JdbcTemplate jdbcTemplate,
+                        @Value("${app.stats.cache-enabled:true}") boolean cacheEnabled,
+                        @Value("${app.stats.cache-ttl:10m}") Duration cacheTtl,
+                        @Value("${app.stats.cache-max-size:1000}") long cacheMaxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheEnabled = cacheEnabled;
+        this.counters = Caffeine.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfterWrite(cacheTtl)
+            .build();
+    }
+    
+    public StatsResponse getStats(String userId) {
+        Counters current = cacheEnabled ? counters.get(userId, this::load) : load(userId);
+        return current.toResponse();
+    }
+    
+    /**
+     * Move the like/dislike counters for a new or changed reaction; previousType is null for new feedback
+     */
+    public void onFeedback(String userId, String previousType, String feedbackType) {
+        Counters current = counters.getIfPresent(userId);
+        if (current != null) {
+            current.adjust(previousType, -1);
+            current.adjust(feedbackType, 1);
+        }
+    }
+    
+    /**
+     * Tracks of the user were added or removed; counts are re-read on the next call
+     */
+    public void onTracksChanged(String userId) {
+        counters.invalidate(userId);
+    }
+    
+    /**
+     * Tracks or feedback of any number of users were removed, e.g. by retention
+     */
+    public void onBulkDelete() {
+        counters.invalidateAll();
+    }
+    
+    private Counters load(String userId) {
+        return jdbcTemplate.queryForObject(STATS_SQL, (rs, rowNum) -> new Counters(
+            rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)), userId, userId);
+    }
+    
+    private static final class Counters {
+        
+        private final long likedTracks;
+        private final long recommendedTracks;
+        private final long uniqueArtists;
+        private final AtomicLong likes;
+        private final AtomicLong dislikes;
+        
+        Counters(long likedTracks, long recommendedTracks, long uniqueArtists, long likes, long dislikes) {
+            this.likedTracks = likedTracks;
+            this.recommendedTracks = recommendedTracks;
+            this.uniqueArtists = uniqueArtists;
+            this.likes = new AtomicLong(likes);
+            this.dislikes = new AtomicLong(dislikes);
+        }
+        
+        void adjust(String feedbackType, int delta) {
+            if ("like".equals(feedbackType)) {
+                likes.addAndGet(delta);
+            } else if ("dislike".equals(feedbackType)) {
+                dislikes.addAndGet(delta);
+            }
+        }
+        
+        StatsResponse toResponse() {
+            return StatsResponse.builder()
+                .success(true)
+                .likedTracksCount(likedTracks)
+                .recommendedTracksCount(recommendedTracks)
+                .uniqueArtistsCount(uniqueArtists)
+                .likedRecommendations(likes.get())
+                .dislikedRecommendations(dislikes.get())
+                .build();
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.musicrec.dto.TrackDto;
+import com.musicrec.entity.ArtistGenre;
+import com.musicrec.entity.Feedback;
+import com.musicrec.entity.Track;
+import com.musicrec.entity.UserTasteProfile;
+import com.musicrec.repository.ArtistGenreRepository;
+import com.musicrec.repository.FeedbackRepository;
+import com.musicrec.repository.TrackRepository;
+import com.musicrec.repository.UserTasteProfileRepository;
+import com.musicrec.util.StringUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user taste profile: weights for artists, genres/tags and release decades.
+ * A liked song adds one to each of its features, a like adds one and a dislike
+ * takes one away; changing or syncing only touches the features of the tracks
+ * involved. Profiles are loaded lazily, built from the user's history the
+ * first time, and written back as a compact binary blob on a schedule.
+ *
+ * A liked song is counted with the catalog genres known when it is added and
+ * taken away with the ones known when it is removed, which can differ, so
+ * profiles are rebuilt from the history once per rebuild interval.
+ */
+@Service
+@Slf4j
+public class TasteProfileService {
+    
+    private static final int FORMAT_VERSION = 2;
+    // Decade weights pile up with every liked song, so they are scaled down before squashing
+    private static final float DECADE_SCALE = 10f;
+    
+    private final UserTasteProfileRepository profileRepository;
+    private final TrackRepository trackRepository;
+    private final FeedbackRepository feedbackRepository;
+    private final ArtistGenreRepository artistGenreRepository;
+    private final Duration rebuildInterval;
+    private final LoadingCache<String, Profile> profiles;
+    
+    public TasteProfileService(UserTasteProfileRepository profileRepository,
+                               TrackRepository trackRepository,
+                               FeedbackRepository feedbackRepository,
+                               ArtistGenreRepository artistGenreRepository,
+                               @Value("${app.recommendation.taste-profile.max-size:1000}") long maxSize,
+                               @Value("${app.recommendation.taste-profile.rebuild-interval:1d}") Duration rebuildInterval) {
+        this.profileRepository = profileRepository;
+        this.trackRepository = trackRepository;
+        this.feedbackRepository = feedbackRepository;
+        this.artistGenreRepository = artistGenreRepository;
+        this.rebuildInterval = rebuildInterval;
+        this.profiles = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .removalListener((String userId, Profile profile, RemovalCause cause) -> {
+                if (cause.wasEvicted() && profile != null) {
+                    save(userId, profile);
+                }
+            })
+            .build(this::load);
+    }
+    
+    /**
+     * How well a track fits the user's taste, in [-1, 1]; 0 for unknown features
+     */
+    public float affinity(String userId, TrackDto track) {
+        return profiles.get(userId).affinity(track.getArtist(), track.getTags(), track.getYear());
+    }
+    
+    public float affinity(String userId, Track track) {
+        return profiles.get(userId).affinity(track.getArtist(), track.getTags(), track.getYear());
+    }
+    
+    /**
+     * Apply a new or changed like/dislike; previousType is null for new feedback
+     */
+    public void onFeedback(String userId, Track track, String previousType, String feedbackType) {
+        float delta = feedbackWeight(feedbackType) - feedbackWeight(previousType);
+        Profile profile = delta != 0 ? existingProfile(userId) : null;
+        if (profile != null) {
+            profile.add(track.getArtist(), track.getTags(), track.getYear(), delta);
+        }
+    }
+    
+    /**
+     * Apply liked songs added to or removed from the library by a sync
+     */
+    public void onLikedTracksChanged(String userId, List<Track> added, List<Track> removed) {
+        Profile profile = added.isEmpty() && removed.isEmpty() ? null : existingProfile(userId);
+        if (profile == null) {
+            return;
+        }
+        
+        Map<String, String> genres = catalogGenres(added, removed);
+        for (Track track : added) {
+            profile.add(track.getArtist(), tagsOf(track, genres), track.getYear(), 1f);
+        }
+        for (Track track : removed) {
+            profile.add(track.getArtist(), tagsOf(track, genres), track.getYear(), -1f);
+        }
+    }
+    
+    /**
+     * Rebuild profiles older than the rebuild interval and write back profiles
+     * that changed since the last run. Rebuilds happen here, outside any sync
+     * transaction, so a build never sees liked songs that are about to be reported.
+     */
+    @Scheduled(fixedDelayString = "${app.recommendation.taste-profile.flush-interval-ms:30000}")
+    public void flush() {
+        LocalDateTime rebuildBefore = LocalDateTime.now().minus(rebuildInterval);
+        profiles.asMap().forEach((userId, profile) -> {
+            Profile current = profile;
+            if (profile.builtAt().isBefore(rebuildBefore)) {
+                Profile rebuilt = build(userId);
+                if (profiles.asMap().replace(userId, profile, rebuilt)) {
+                    current = rebuilt;
+                }
+            }
+            save(userId, current);
+        });
+    }
+    
+    /**
+     * Write back what changed since the last flush before shutting down
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        profiles.asMap().forEach(this::save);
+    }
+    
+    private void save(String userId, Profile profile) {
+        byte[] weights = profile.encodeIfDirty();
+        if (weights == null) {
+            return;
+        }
+        
+        try {
+            profileRepository.save(UserTasteProfile.builder()
+                .userId(userId)
+                .weights(weights)
+                .updatedAt(LocalDateTime.now())
+                .build());
+        } catch (Exception e) {
+            profile.markDirty();
+            log.warn("Could not save taste profile for user {}: {}", userId, e.getMessage());
+        }
+    }
+    
+    /**
+     * The user's profile if it was ever built, else null. Changes are already saved
+     * when they are reported, so a profile built now would count them twice.
+     */
+    private Profile existingProfile(String userId) {
+        Profile profile = profiles.getIfPresent(userId);
+        if (profile == null && profileRepository.existsById(userId)) {
+            profile = profiles.get(userId);
+        }
+        return profile;
+    }
+    
+    private Profile load(String userId) {
+        Optional<UserTasteProfile> stored = profileRepository.findById(userId);
+        if (stored.isPresent()) {
+            try {
+                return Profile.decode(stored.get().getWeights());
+            } catch (IOException e) {
+                log.warn("Stored taste profile of user {} is unreadable, rebuilding: {}", userId, e.getMessage());
+            }
+        }
+        return build(userId);
+    }
+    
+    /**
+     * One-off build from the liked songs and feedback; from then on it is only updated
+     */
+    private Profile build(String userId) {
+        Profile profile = new Profile(LocalDateTime.now());
+        
+        List<Track> liked = trackRepository.findByUserIdAndSource(userId, "spotify_liked");
+        Map<String, String> genres = catalogGenres(liked, Collections.emptyList());
+        for (Track track : liked) {
+            profile.add(track.getArtist(), tagsOf(track, genres), track.getYear(), 1f);
+        }
+        
+        List<Feedback> feedback = feedbackRepository.findByUserId(userId);
+        Map<Long, Track> tracks = trackRepository.findAllById(feedback.stream().map(Feedback::getTrackId).toList())
+            .stream()
+            .collect(Collectors.toMap(Track::getId, Function.identity()));
+        for (Feedback f : feedback) {
+            Track track = tracks.get(f.getTrackId());
+            if (track != null) {
+                profile.add(track.getArtist(), track.getTags(), track.getYear(), feedbackWeight(f.getFeedbackType()));
+            }
+        }
+        
+        profile.markDirty();
+        log.info("🧭 Built taste profile for user {} from {} liked songs and {} feedback rows",
+            userId, liked.size(), feedback.size());
+        return profile;
+    }
+    
+    private Map<String, String> catalogGenres(List<Track> added, List<Track> removed) {
+        Set<String> artistIds = new HashSet<>();
+        for (List<Track> tracks : List.of(added, removed)) {
+            for (Track track : tracks) {
+                if (track.getArtistId() != null) {
+                    artistIds.add(track.getArtistId());
+                }
+            }
+        }
+        if (artistIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        return artistGenreRepository.findAllById(artistIds).stream()
+            .collect(Collectors.toMap(ArtistGenre::getArtistId, ArtistGenre::getGenres));
+    }
+    
+    private static String tagsOf(Track track, Map<String, String> genres) {
+        String catalog = track.getArtistId() != null ? genres.get(track.getArtistId()) : null;
+        return catalog != null && !catalog.isEmpty() ? catalog : track.getTags();
+    }
+    
+    private static float feedbackWeight(String feedbackType) {
+        if ("like".equals(feedbackType)) {
+            return 1f;
+        }
+        if ("dislike".equals(feedbackType)) {
+            return -1f;
+        }
+        return 0f;
+    }
+    
+    /**
+     * Feature weights keyed "a:<artist>", "t:<tag>" and "d:<decade>", all normalized
+     */
+    private static final class Profile {
+        
+        private final Map<String, Float> weights = new HashMap<>();
+        private final LocalDateTime builtAt;
+        private boolean dirty;
+        
+        Profile(LocalDateTime builtAt) {
+            this.builtAt = builtAt;
+        }
+        
+        LocalDateTime builtAt() {
+            return builtAt;
+        }
+        
+        synchronized void add(String artist, String tags, String year, float delta) {
+            String artistKey = StringUtil.normalize(artist);
+            if (!artistKey.isEmpty()) {
+                addWeight("a:" + artistKey, delta);
+            }
+            for (String tag : splitTags(tags)) {
+                addWeight("t:" + tag, delta);
+            }
+            String decade = decadeOf(year);
+            if (decade != null) {
+                addWeight("d:" + decade, delta);
+            }
+            dirty = true;
+        }
+        
+        synchronized float affinity(String artist, String tags, String year) {
+            float artistWeight = weights.getOrDefault("a:" + StringUtil.normalize(artist), 0f);
+            
+            float tagWeight = 0;
+            List<String> tagKeys = splitTags(tags);
+            for (String tag : tagKeys) {
+                tagWeight += weights.getOrDefault("t:" + tag, 0f);
+            }
+            if (!tagKeys.isEmpty()) {
+                tagWeight /= tagKeys.size();
+            }
+            
+            String decade = decadeOf(year);
+            float decadeWeight = decade != null ? weights.getOrDefault("d:" + decade, 0f) / DECADE_SCALE : 0f;
+            
+            return (float) (Math.tanh(artistWeight) + Math.tanh(tagWeight) + Math.tanh(decadeWeight)) / 3;
+        }
+        
+        synchronized void markDirty() {
+            dirty = true;
+        }
+        
+        /**
+         * Encoded weights if they changed since the last call, else null
+         */
+        synchronized byte[] encodeIfDirty() {
+            if (!dirty) {
+                return null;
+            }
+            
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(builtAt.toString());
+                out.writeInt(weights.size());
+                for (Map.Entry<String, Float> entry : weights.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeFloat(entry.getValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            dirty = false;
+            return bytes.toByteArray();
+        }
+        
+        static Profile decode(byte[] data) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                if (in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Unsupported taste profile format");
+                }
+                Profile profile = new Profile(LocalDateTime.parse(in.readUTF()));
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    profile.weights.put(in.readUTF(), in.readFloat());
+                }
+                return profile;
+            }
+        }
+        
+        private void addWeight(String key, float delta) {
+            // Features that cancel out are dropped so the profile does not grow forever
+            float weight = weights.getOrDefault(key, 0f) + delta;
+            if (Math.abs(weight) < 1e-6f) {
+                weights.remove(key);
+            } else {
+                weights.put(key, weight);
+            }
+        }
+        
+        private static List<String> splitTags(String tags) {
+            if (tags == null || tags.isBlank()) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>();
+            for (String tag : tags.split(",")) {
+                String normalized = StringUtil.normalize(tag);
+                if (!normalized.isEmpty()) {
+                    result.add(normalized);
+                }
+            }
+            return result;
+        }
+        
+        private static String decadeOf(String year) {
+            if (year == null || year.length() < 4 || !year.substring(0, 4).chars().allMatch(Character::isDigit)) {
+                return null;
+            }
+            return year.substring(0, 3) + "0s";
+        }
+    }
+}
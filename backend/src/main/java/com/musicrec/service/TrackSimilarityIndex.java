@@ -0,0 +1,415 @@
+package com.musicrec.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.musicrec.util.HnswIndex;
+import com.musicrec.util.StringUtil;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * "More like this" over every track ever seen (tracks, expanded_tracks and
+ * liked_tracks), one entry per normalized artist/track. Each track is embedded
+ * as the sum of fixed pseudo-random vectors of its tags and artist (a random
+ * projection of its tag vector), and the embeddings are kept in an HNSW index.
+ *
+ * Rows are picked up on a schedule by the time they last changed, so new rows
+ * are added and rows whose tags or artist genres changed are embedded again
+ * (the old node is retired and skipped by queries). Every scan starts a little
+ * before the newest change seen, so rows that commit late are not missed.
+ * The index is saved to disk after every change, so a restart only indexes what is new.
+ */
+@Service
+@Slf4j
+public class TrackSimilarityIndex {
+    
+    private static final int FILE_VERSION = 2;
+    private static final int CHUNK_SIZE = 1000;
+    // The artist matters, but a shared genre should count for more than a shared name
+    private static final float ARTIST_WEIGHT = 0.5f;
+    // Rebuild the index from the live nodes once this share of it is retired
+    private static final double MAX_RETIRED_SHARE = 0.25;
+    
+    // Rows changed after (time, id), oldest change first. Liked tracks keep their genres in
+    // the artist catalog, so a catalog refresh counts as a change of every track of the artist
+    private static final String TRACKS_SQL =
+        "SELECT t.id, t.track_name, t.artist, COALESCE(NULLIF(g.genres, ''), t.tags), t.created_at FROM tracks t " +
+        "LEFT JOIN artist_genre g ON g.artist_id = t.artist_id " +
+        "WHERE (t.created_at, t.id) > (?, ?) ORDER BY t.created_at, t.id LIMIT ?";
+    private static final String GENRES_SQL =
+        "SELECT t.id, t.track_name, t.artist, COALESCE(NULLIF(g.genres, ''), t.tags), g.refreshed_at FROM artist_genre g " +
+        "JOIN tracks t ON t.artist_id = g.artist_id " +
+        "WHERE (g.refreshed_at, t.id) > (?, ?) ORDER BY g.refreshed_at, t.id LIMIT ?";
+    private static final String EXPANDED_SQL =
+        "SELECT id, track_name, artist, tags, created_at FROM expanded_tracks " +
+        "WHERE (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?";
+    private static final String LIKED_SQL =
+        "SELECT id, track_name, artist, NULL, created_at FROM liked_tracks " +
+        "WHERE (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?";
+    private static final String[] SOURCES = { TRACKS_SQL, GENRES_SQL, EXPANDED_SQL, LIKED_SQL };
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final Path path;
+    private final int dim;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final Duration changeOverlap;
+    private final Timer queryTimer;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Cache<String, float[]> tokenVectors = Caffeine.newBuilder()
+        .maximumSize(50_000)
+        .build();
+    
+    // Guarded by lock; only the refresh changes them, so it reads them without the lock
+    private HnswIndex index;
+    private final Map<String, Integer> nodesByKey = new HashMap<>();
+    // By node; null for retired nodes
+    private final List<IndexedTrack> tracks = new ArrayList<>();
+    private int retired;
+    // Newest change seen per source query, epoch millis
+    private final long[] changedUntil = new long[SOURCES.length];
+    
+    public TrackSimilarityIndex(JdbcTemplate jdbcTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.recommendation.ann.path:./data/track-index.bin}") String path,
+                                @Value("${app.recommendation.ann.dimensions:32}") int dim,
+                                @Value("${app.recommendation.ann.m:16}") int m,
+                                @Value("${app.recommendation.ann.ef-construction:100}") int efConstruction,
+                                @Value("${app.recommendation.ann.ef-search:64}") int efSearch,
+                                @Value("${app.recommendation.ann.change-overlap:10m}") Duration changeOverlap) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.path = Path.of(path);
+        this.dim = dim;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.changeOverlap = changeOverlap;
+        this.index = new HnswIndex(dim, m, efConstruction);
+        this.queryTimer = Timer.builder("track_index.query")
+            .description("Nearest-neighbour lookups in the track index")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("track_index.size", this, TrackSimilarityIndex::size)
+            .description("Tracks in the similarity index")
+            .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_VERSION) {
+                log.info("Track index at {} has an old format, rebuilding", path);
+                return;
+            }
+            long[] loadedChangedUntil = new long[SOURCES.length];
+            for (int source = 0; source < SOURCES.length; source++) {
+                loadedChangedUntil[source] = in.readLong();
+            }
+            int count = in.readInt();
+            List<IndexedTrack> loaded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                loaded.add(in.readBoolean() ? new IndexedTrack(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong()) : null);
+            }
+            HnswIndex loadedIndex = HnswIndex.read(in);
+            if (loadedIndex.dim() != dim || loadedIndex.size() != count) {
+                log.info("Track index at {} does not match the configuration, rebuilding", path);
+                return;
+            }
+            
+            lock.writeLock().lock();
+            try {
+                index = loadedIndex;
+                tracks.addAll(loaded);
+                for (int node = 0; node < loaded.size(); node++) {
+                    IndexedTrack track = loaded.get(node);
+                    if (track != null) {
+                        nodesByKey.put(key(track.artist(), track.trackName()), node);
+                    } else {
+                        retired++;
+                    }
+                }
+                System.arraycopy(loadedChangedUntil, 0, changedUntil, 0, changedUntil.length);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("📇 Loaded track index with {} tracks", nodesByKey.size());
+        } catch (Exception e) {
+            log.warn("Could not load track index from {}, rebuilding: {}", path, e.getMessage());
+        }
+    }
+    
+    /**
+     * Index rows added or changed since the last run and save the index if anything changed
+     */
+    @Scheduled(fixedDelayString = "${app.recommendation.ann.refresh-interval-ms:60000}",
+               initialDelayString = "${app.recommendation.ann.refresh-initial-delay-ms:10000}")
+    public void refresh() {
+        int[] changes = new int[2]; // added, embedded again
+        try {
+            for (int source = 0; source < SOURCES.length; source++) {
+                indexChangedRows(source, changes);
+            }
+        } catch (Exception e) {
+            log.warn("Track index refresh failed: {}", e.getMessage());
+        }
+        
+        if (changes[0] > 0 || changes[1] > 0) {
+            compactIfNeeded();
+            log.info("📇 Indexed {} new and {} changed tracks ({} total)", changes[0], changes[1], size());
+            save();
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodesByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Tracks most similar to the given one, best first, never the track itself.
+     * A track that is not indexed yet is embedded on the fly.
+     */
+    public List<SimilarTrack> similarTo(String artist, String trackName, String tags, int limit) {
+        return queryTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                String key = key(artist, trackName);
+                Integer node = nodesByKey.get(key);
+                float[] query = node != null ? index.vector(node) : embed(artist, tags);
+                if (query == null) {
+                    return Collections.<SimilarTrack>emptyList();
+                }
+                
+                // Ask for more when retired nodes may take some of the places
+                int k = retired > 0 ? 2 * (limit + 1) : limit + 1;
+                List<SimilarTrack> result = new ArrayList<>(limit);
+                for (int neighbour : index.search(query, k, efSearch)) {
+                    if (result.size() == limit) {
+                        break;
+                    }
+                    IndexedTrack track = tracks.get(neighbour);
+                    if (track != null && (node == null || neighbour != node)) {
+                        result.add(new SimilarTrack(track.trackName(), track.artist(), track.tags(),
+                            index.similarity(neighbour, query)));
+                    }
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+    
+    private void indexChangedRows(int source, int[] changes) {
+        // Start a little before the newest change seen, for rows that committed after it
+        Timestamp afterTime = new Timestamp(Math.max(0, changedUntil[source] - changeOverlap.toMillis()));
+        long afterId = Long.MIN_VALUE;
+        List<ChangedRow> rows;
+        do {
+            rows = jdbcTemplate.query(SOURCES[source], (rs, rowNum) -> new ChangedRow(
+                rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getTimestamp(5)
+            ), afterTime, afterId, CHUNK_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+            
+            // Embed outside the lock, change the index under it one row at a time so queries interleave
+            for (ChangedRow row : rows) {
+                String tags = row.tags() != null ? row.tags() : "";
+                long changedAt = row.changedAt().getTime();
+                String key = key(row.artist(), row.trackName());
+                Integer node = nodesByKey.get(key);
+                IndexedTrack current = node != null ? tracks.get(node) : null;
+                
+                // Rows seen again in the overlap, or older than what the key was embedded from
+                if (current != null && (current.tags().equals(tags) || changedAt < current.changedAt())) {
+                    continue;
+                }
+                float[] vector = embed(row.artist(), tags);
+                if (vector == null && current == null) {
+                    continue;
+                }
+                
+                lock.writeLock().lock();
+                try {
+                    if (current != null) {
+                        tracks.set(node, null);
+                        nodesByKey.remove(key);
+                        retired++;
+                    }
+                    if (vector != null) {
+                        nodesByKey.put(key, index.add(vector));
+                        tracks.add(new IndexedTrack(row.trackName(), row.artist(), tags, changedAt));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                changes[current == null ? 0 : 1]++;
+            }
+            
+            ChangedRow last = rows.get(rows.size() - 1);
+            afterTime = last.changedAt();
+            afterId = last.id();
+            lock.writeLock().lock();
+            try {
+                changedUntil[source] = Math.max(changedUntil[source], afterTime.getTime());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } while (rows.size() == CHUNK_SIZE);
+    }
+    
+    /**
+     * Rebuild the graph from the live nodes once too many are retired
+     */
+    private void compactIfNeeded() {
+        if (retired <= MAX_RETIRED_SHARE * index.size()) {
+            return;
+        }
+        
+        // Only the refresh changes the index, so it can be rebuilt from a copy outside the lock
+        List<IndexedTrack> live = new ArrayList<>(nodesByKey.size());
+        HnswIndex rebuilt = new HnswIndex(dim, m, efConstruction);
+        Map<String, Integer> rebuiltNodes = new HashMap<>();
+        for (int node = 0; node < tracks.size(); node++) {
+            IndexedTrack track = tracks.get(node);
+            if (track != null) {
+                rebuiltNodes.put(key(track.artist(), track.trackName()), rebuilt.add(index.vector(node)));
+                live.add(track);
+            }
+        }
+        
+        lock.writeLock().lock();
+        try {
+            index = rebuilt;
+            tracks.clear();
+            tracks.addAll(live);
+            nodesByKey.clear();
+            nodesByKey.putAll(rebuiltNodes);
+            retired = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("📇 Compacted track index to {} tracks", live.size());
+    }
+    
+    private void save() {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_VERSION);
+                for (long changed : changedUntil) {
+                    out.writeLong(changed);
+                }
+                out.writeInt(tracks.size());
+                for (IndexedTrack track : tracks) {
+                    out.writeBoolean(track != null);
+                    if (track != null) {
+                        out.writeUTF(track.trackName());
+                        out.writeUTF(track.artist());
+                        out.writeUTF(track.tags());
+                        out.writeLong(track.changedAt());
+                    }
+                }
+                index.write(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save track index to {}: {}", path, e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Unit-length embedding of the tags plus the artist; null if there is nothing to embed
+     */
+    private float[] embed(String artist, String tags) {
+        float[] vector = new float[dim];
+        String artistKey = StringUtil.normalize(artist);
+        if (!artistKey.isEmpty()) {
+            add(vector, tokenVector("artist:" + artistKey), ARTIST_WEIGHT);
+        }
+        if (tags != null) {
+            for (String tag : tags.split(",")) {
+                String normalized = StringUtil.normalize(tag);
+                if (!normalized.isEmpty()) {
+                    add(vector, tokenVector("tag:" + normalized), 1f);
+                }
+            }
+        }
+        
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return null;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dim; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+    
+    /**
+     * Fixed random +-1 direction per token, seeded by the token itself so it survives restarts
+     */
+    private float[] tokenVector(String token) {
+        return tokenVectors.get(token, t -> {
+            SplittableRandom random = new SplittableRandom(t.hashCode() * 0x9E3779B97F4A7C15L);
+            float[] vector = new float[dim];
+            for (int i = 0; i < dim; i++) {
+                vector[i] = random.nextBoolean() ? 1f : -1f;
+            }
+            return vector;
+        });
+    }
+    
+    private static void add(float[] target, float[] vector, float weight) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += weight * vector[i];
+        }
+    }
+    
+    private static String key(String artist, String trackName) {
+        return StringUtil.normalize(artist) + "\n" + StringUtil.normalize(trackName);
+    }
+    
+    // changedAt: when the row the embedding came from last changed, epoch millis
+    private record IndexedTrack(String trackName, String artist, String tags, long changedAt) {}
+    
+    private record ChangedRow(long id, String trackName, String artist, String tags, Timestamp changedAt) {}
+    
+    public record SimilarTrack(String trackName, String artist, String tags, float score) {}
+}
@@ -0,0 +1,445 @@
+package com.musicrec.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical navigable small world graph over unit-length float vectors,
+ * with cosine distance (1 - dot). Nodes are dense ints in insertion order;
+ * vectors live in one flat float array and neighbour lists in int arrays,
+ * so a search touches no boxed values.
+ *
+ * Not thread-safe: callers serialize {@link #add} against {@link #search}
+ * (searches alone may run concurrently).
+ */
+public final class HnswIndex {
+    
+    private static final int FORMAT_VERSION = 1;
+    
+    private final int dim;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    
+    private float[] vectors;
+    // links[node][level] = {count, neighbour...}
+    private int[][][] links;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+    
+    public HnswIndex(int dim, int m, int efConstruction) {
+        this.dim = dim;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.vectors = new float[16 * dim];
+        this.links = new int[16][][];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int dim() {
+        return dim;
+    }
+    
+    /**
+     * Insert a unit-length vector and return its node id
+     */
+    public int add(float[] vector) {
+        if (vector.length != dim) {
+            throw new IllegalArgumentException("Expected " + dim + " dimensions, got " + vector.length);
+        }
+        
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(vector, 0, vectors, node * dim, dim);
+        
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        size++;
+        
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(vector, current, efConstruction, l);
+            int maxNeighbours = l == 0 ? maxM0 : m;
+            for (int neighbour : selectNeighbours(candidates, maxNeighbours)) {
+                link(node, neighbour, l);
+                link(neighbour, node, l);
+            }
+            current = nodeOf(candidates[0]);
+        }
+        
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+    
+    /**
+     * The k nearest nodes to the query, closest first
+     */
+    public int[] search(float[] query, int k, int ef) {
+        if (entryPoint < 0) {
+            return new int[0];
+        }
+        
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        
+        long[] found = searchLayer(query, current, Math.max(ef, k), 0);
+        int[] result = new int[Math.min(k, found.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = nodeOf(found[i]);
+        }
+        return result;
+    }
+    
+    public float similarity(int node, float[] query) {
+        return 1 - distance(query, node);
+    }
+    
+    /**
+     * Copy of a stored vector
+     */
+    public float[] vector(int node) {
+        return Arrays.copyOfRange(vectors, node * dim, (node + 1) * dim);
+    }
+    
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(dim);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int i = 0; i < size * dim; i++) {
+            out.writeFloat(vectors[i]);
+        }
+        for (int node = 0; node < size; node++) {
+            out.writeByte(links[node].length);
+            for (int[] level : links[node]) {
+                out.writeShort(level[0]);
+                for (int i = 1; i <= level[0]; i++) {
+                    out.writeInt(level[i]);
+                }
+            }
+        }
+    }
+    
+    public static HnswIndex read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported index format " + version);
+        }
+        
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt());
+        int size = in.readInt();
+        index.ensureCapacity(size);
+        index.size = size;
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        for (int i = 0; i < size * index.dim; i++) {
+            index.vectors[i] = in.readFloat();
+        }
+        for (int node = 0; node < size; node++) {
+            int levels = in.readByte();
+            index.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] level = new int[(l == 0 ? index.maxM0 : index.m) + 1];
+                level[0] = in.readShort();
+                for (int i = 1; i <= level[0]; i++) {
+                    level[i] = in.readInt();
+                }
+                index.links[node][l] = level;
+            }
+        }
+        return index;
+    }
+    
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float d = distance(query, neighbours[i]);
+                if (d < best) {
+                    best = d;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Best-first search of one layer; returns up to ef packed (distance, node) entries, closest first
+     */
+    private long[] searchLayer(float[] query, int start, int ef, int level) {
+        Visited seen = visited.get();
+        seen.reset(size);
+        
+        LongHeap candidates = new LongHeap(ef * 2);
+        LongHeap results = new LongHeap(ef + 1); // max-heap via negated keys
+        
+        long startEntry = pack(distance(query, start), start);
+        seen.mark(start);
+        candidates.push(startEntry);
+        results.push(-startEntry);
+        
+        while (!candidates.isEmpty()) {
+            long closest = candidates.pop();
+            long furthest = -results.peek();
+            if (distanceOf(closest) > distanceOf(furthest)) {
+                break;
+            }
+            
+            int[] neighbours = links[nodeOf(closest)][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!seen.mark(neighbour)) {
+                    continue;
+                }
+                
+                float d = distance(query, neighbour);
+                if (results.size() < ef || d < distanceOf(-results.peek())) {
+                    long entry = pack(d, neighbour);
+                    candidates.push(entry);
+                    results.push(-entry);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        
+        long[] sorted = new long[results.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = -results.pop();
+        }
+        return sorted;
+    }
+    
+    /**
+     * Up to max of the candidates (packed, closest first) as neighbours. A candidate is
+     * skipped when it is closer to an already selected neighbour than to the new node,
+     * so the links spread out instead of all pointing into one dense cluster; without
+     * that, clustered data ends up with clusters no search can get out of.
+     */
+    private int[] selectNeighbours(long[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            int candidate = nodeOf(candidates[i]);
+            float d = distanceOf(candidates[i]);
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(candidate, selected[j]) < d) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+    
+    /**
+     * Add target to node's list at this level; a full list is pruned with selectNeighbours
+     */
+    private void link(int node, int target, int level) {
+        int[] neighbours = links[node][level];
+        int count = neighbours[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbours[i] == target) {
+                return;
+            }
+        }
+        
+        if (count < neighbours.length - 1) {
+            neighbours[count + 1] = target;
+            neighbours[0] = count + 1;
+            return;
+        }
+        
+        long[] candidates = new long[count + 1];
+        for (int i = 1; i <= count; i++) {
+            candidates[i - 1] = pack(distance(node, neighbours[i]), neighbours[i]);
+        }
+        candidates[count] = pack(distance(node, target), target);
+        Arrays.sort(candidates);
+        
+        int[] kept = selectNeighbours(candidates, count);
+        System.arraycopy(kept, 0, neighbours, 1, kept.length);
+        neighbours[0] = kept.length;
+    }
+    
+    private float distance(float[] query, int node) {
+        int offset = node * dim;
+        float dot = 0;
+        for (int i = 0; i < dim; i++) {
+            dot += query[i] * vectors[offset + i];
+        }
+        // Clamped so the float bits stay ordered when packed
+        return Math.max(0f, 1 - dot);
+    }
+    
+    private float distance(int a, int b) {
+        int offsetA = a * dim;
+        int offsetB = b * dim;
+        float dot = 0;
+        for (int i = 0; i < dim; i++) {
+            dot += vectors[offsetA + i] * vectors[offsetB + i];
+        }
+        return Math.max(0f, 1 - dot);
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > links.length) {
+            int newCapacity = Math.max(capacity, links.length * 2);
+            links = Arrays.copyOf(links, newCapacity);
+            vectors = Arrays.copyOf(vectors, newCapacity * dim);
+        }
+    }
+    
+    // Non-negative float bits sort like the floats, so (distance, node) packs into one ordered long
+    private static long pack(float distance, int node) {
+        return ((long) Float.floatToIntBits(distance) << 32) | node;
+    }
+    
+    private static float distanceOf(long entry) {
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+    
+    private static int nodeOf(long entry) {
+        return (int) entry;
+    }
+    
+    /**
+     * Per-thread visited marks, reset in O(1) by bumping the epoch
+     */
+    private static final class Visited {
+        
+        private int[] marks = new int[0];
+        private int epoch;
+        
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+        
+        /**
+         * True if the node was not visited yet in this search
+         */
+        boolean mark(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+    
+    /**
+     * Binary min-heap of longs
+     */
+    private static final class LongHeap {
+        
+        private long[] heap;
+        private int size;
+        
+        LongHeap(int capacity) {
+            heap = new long[Math.max(capacity, 4)];
+        }
+        
+        boolean isEmpty() {
+            return size == 0;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        long peek() {
+            return heap[0];
+        }
+        
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+        
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+}
@@ -2,63 +2,122 @@ package com.musicrec.util;
 
 import com.musicrec.exception.CustomExceptions;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Lock-free rate limiter using the generic cell rate algorithm (GCRA), the
+ * single-timestamp form of a token bucket. Each key keeps one "theoretical
+ * arrival time" in nanoseconds and permits are taken with a CAS, so there is
+ * no per-request queue to scan and no global lock.
+ *
+ * Callers register a key once with {@link #configure} and then either
+ * {@link #tryAcquire} (fail fast) or {@link #acquire} (wait for a slot).
+ */
 @Component
 public class RateLimiter {
     
-    private final Map<String, Queue<Long>> requestTimestamps = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
     
-    public synchronized boolean allowRequest(String key, int maxRequests, long windowSeconds) {
-        Queue<Long> timestamps = requestTimestamps.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
-        
-        long now = Instant.now().getEpochSecond();
-        long windowStart = now - windowSeconds;
-        
-        // Remove old timestamps
-        timestamps.removeIf(timestamp -> timestamp < windowStart);
-        
-        if (timestamps.size() < maxRequests) {
-            timestamps.add(now);
-            return true;
+    /**
+     * Register or replace the limit for a key
+     */
+    public void configure(String key, double permitsPerSecond, int burst) {
+        buckets.put(key, new Bucket(permitsPerSecond, burst));
+    }
+    
+    /**
+     * Take permits only if they are available right now
+     */
+    public boolean tryAcquire(String key, int permits) {
+        return bucket(key).tryAcquire(permits);
+    }
+    
+    /**
+     * Reserve permits and complete once the reservation is due.
+     * The reservation is made on subscription, waiting uses a timer, not a thread.
+     */
+    public Mono<Void> acquire(String key, int permits) {
+        return Mono.defer(() -> {
+            long waitNanos = bucket(key).reserve(permits);
+            return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then() : Mono.empty();
+        });
+    }
+    
+    /**
+     * Reserve permits and park the calling thread until they are due.
+     * For synchronous callers that cannot compose {@link #acquire}.
+     */
+    public void acquireBlocking(String key, int permits) {
+        long deadline = System.nanoTime() + bucket(key).reserve(permits);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new CustomExceptions.RateLimitException("Interrupted while waiting for rate limit");
+            }
         }
-        
-        return false;
     }
     
-    public void checkRateLimit(String key, int maxRequests, long windowSeconds) {
-        if (!allowRequest(key, maxRequests, windowSeconds)) {
-            throw new CustomExceptions.RateLimitException(
-                "Rate limit exceeded. Please try again later."
-            );
+    /**
+     * Hold every caller of this key back for the given time, e.g. after an upstream 429
+     */
+    public void penalize(String key, Duration holdOff) {
+        bucket(key).penalize(holdOff.toNanos());
+    }
+    
+    private Bucket bucket(String key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            throw new IllegalStateException("No rate limit configured for key: " + key);
         }
+        return bucket;
     }
     
-    public long getWaitTime(String key, int maxRequests, long windowSeconds) {
-        Queue<Long> timestamps = requestTimestamps.get(key);
-        if (timestamps == null || timestamps.size() < maxRequests) {
-            return 0;
+    private static final class Bucket {
+        
+        private final long intervalNanos;
+        // How far the arrival time may run ahead of now: burst * interval
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+        
+        Bucket(double permitsPerSecond, int burst) {
+            this.intervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+            this.toleranceNanos = intervalNanos * Math.max(1, burst);
         }
         
-        long now = Instant.now().getEpochSecond();
-        long oldest = timestamps.peek();
-        long waitTime = (oldest + windowSeconds) - now;
+        boolean tryAcquire(int permits) {
+            while (true) {
+                long now = System.nanoTime();
+                long tat = theoreticalArrival.get();
+                long newTat = Math.max(tat, now) + permits * intervalNanos;
+                if (newTat - toleranceNanos > now) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                    return true;
+                }
+            }
+        }
         
-        return Math.max(0, waitTime);
-    }
-    
-    // Cleanup old entries periodically
-    public void cleanup() {
-        long now = Instant.now().getEpochSecond();
-        requestTimestamps.entrySet().removeIf(entry -> {
-            Queue<Long> timestamps = entry.getValue();
-            timestamps.removeIf(timestamp -> timestamp < now - 3600); // 1 hour
-            return timestamps.isEmpty();
-        });
+        /**
+         * Unconditionally book the permits, returning how long the caller must wait
+         */
+        long reserve(int permits) {
+            long now = System.nanoTime();
+            long newTat = theoreticalArrival.accumulateAndGet(now, (tat, n) -> Math.max(tat, n) + permits * intervalNanos);
+            return Math.max(0, newTat - toleranceNanos - now);
+        }
+        
+        void penalize(long holdOffNanos) {
+            long earliest = System.nanoTime() + holdOffNanos + toleranceNanos - intervalNanos;
+            theoreticalArrival.accumulateAndGet(earliest, Math::max);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,83 +1,198 @@
 package com.musicrec.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.musicrec.entity.User;
+import com.musicrec.entity.UserSession;
+import com.musicrec.repository.UserRepository;
+import com.musicrec.repository.UserSessionRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
 
 /**
- * Simple session manager to store user access tokens
- * In production, consider using Redis or a proper session store
+ * Spotify tokens per user. The users table is the source of truth (tokens and
+ * expiry) and user_sessions records who has an active session; every change is
+ * written through to both. Reads go through a short-lived in-memory near cache
+ * that falls back to the database, so tokens survive restarts and several
+ * instances can share them. Recently active sessions are preloaded at startup.
+ * A session's last-seen time only moves with requests (a new login and touches), not
+ * with token refreshes, so background refreshes do not keep a session alive.
  */
 @Component
 @Slf4j
 public class SessionManager {
     
-    // Store access tokens by user ID
-    private final Map<String, String> userAccessTokens = new ConcurrentHashMap<>();
+    private final UserRepository userRepository;
+    private final UserSessionRepository userSessionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration warmUpWindow;
+    private final Duration touchInterval;
     
-    // Store refresh tokens by user ID
-    private final Map<String, String> userRefreshTokens = new ConcurrentHashMap<>();
+    // Near cache; the TTL bounds how long another instance's refresh can go unseen
+    private final Cache<String, Tokens> tokens;
+    
+    public SessionManager(UserRepository userRepository,
+                          UserSessionRepository userSessionRepository,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${app.session.near-cache-ttl:5m}") Duration nearCacheTtl,
+                          @Value("${app.session.near-cache-size:10000}") long nearCacheSize,
+                          @Value("${app.session.warm-up-window:1d}") Duration warmUpWindow,
+                          @Value("${app.session.touch-interval:10m}") Duration touchInterval) {
+        this.userRepository = userRepository;
+        this.userSessionRepository = userSessionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.warmUpWindow = warmUpWindow;
+        this.touchInterval = touchInterval;
+        this.tokens = Caffeine.newBuilder()
+            .maximumSize(nearCacheSize)
+            .expireAfterWrite(nearCacheTtl)
+            .build();
+    }
+    
+    /**
+     * Load the sessions used in the last warm-up window so the first requests after a restart hit memory
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            LocalDateTime since = LocalDateTime.now().minus(warmUpWindow);
+            int loaded = 0;
+            for (UserSession session : userSessionRepository.findByLastSeenAfter(since)) {
+                if (load(session) != null) {
+                    loaded++;
+                }
+            }
+            log.info("🔑 Preloaded {} Spotify sessions", loaded);
+        } catch (Exception e) {
+            log.warn("Could not preload sessions: {}", e.getMessage());
+        }
+    }
     
     /**
      * Store access token for a user
      */
     public void setAccessToken(String userId, String accessToken) {
-        userAccessTokens.put(userId, accessToken);
-        log.debug("Stored access token for user: {}", userId);
+        Tokens current = current(userId);
+        setTokens(userId, accessToken, current != null ? current.refreshToken() : null,
+            current != null ? current.expiresAt() : null);
     }
     
     /**
      * Get access token for a user
      */
     public String getAccessToken(String userId) {
-        String token = userAccessTokens.get(userId);
-        if (token == null) {
+        Tokens current = current(userId);
+        if (current == null || current.accessToken() == null) {
             log.warn("No access token found for user: {}", userId);
             throw new IllegalStateException("No Spotify access token found. Please log in again.");
         }
-        return token;
+        touch(userId, current);
+        return current.accessToken();
     }
     
     /**
      * Store refresh token for a user
      */
     public void setRefreshToken(String userId, String refreshToken) {
-        userRefreshTokens.put(userId, refreshToken);
-        log.debug("Stored refresh token for user: {}", userId);
+        Tokens current = current(userId);
+        setTokens(userId, current != null ? current.accessToken() : null, refreshToken,
+            current != null ? current.expiresAt() : null);
     }
     
     /**
      * Get refresh token for a user
      */
     public String getRefreshToken(String userId) {
-        return userRefreshTokens.get(userId);
+        Tokens current = current(userId);
+        return current != null ? current.refreshToken() : null;
+    }
+    
+    /**
+     * When the user's access token expires, if known
+     */
+    public LocalDateTime getTokenExpiry(String userId) {
+        Tokens current = current(userId);
+        return current != null ? current.expiresAt() : null;
     }
     
     /**
      * Store both tokens at once
      */
     public void setTokens(String userId, String accessToken, String refreshToken) {
-        setAccessToken(userId, accessToken);
-        if (refreshToken != null) {
-            setRefreshToken(userId, refreshToken);
+        Tokens current = current(userId);
+        setTokens(userId, accessToken, refreshToken, current != null ? current.expiresAt() : null);
+    }
+    
+    /**
+     * Store both tokens and their expiry, written through to the database.
+     * A null refresh token keeps the stored one, as Spotify does not always send a new one.
+     * Only a new session gets a last-seen time; an existing one keeps its own.
+     */
+    public void setTokens(String userId, String accessToken, String refreshToken, LocalDateTime expiresAt) {
+        Optional<User> user = userRepository.findBySpotifyId(userId);
+        String keptRefreshToken = refreshToken != null ? refreshToken
+            : user.map(User::getRefreshToken).orElse(null);
+        
+        user.ifPresent(u -> {
+            u.setAccessToken(accessToken);
+            u.setRefreshToken(keptRefreshToken);
+            u.setTokenExpiry(expiresAt);
+            userRepository.save(u);
+        });
+        
+        // Unknown until the session is read again, so the next request touches it
+        Tokens previous = tokens.getIfPresent(userId);
+        LocalDateTime touchedAt = previous != null ? previous.touchedAt() : LocalDateTime.MIN;
+        
+        if (accessToken != null) {
+            String tokenHash = hash(accessToken);
+            Integer updated = transactionTemplate.execute(status -> userSessionRepository.updateTokenHash(userId, tokenHash));
+            if (updated == null || updated == 0) {
+                touchedAt = LocalDateTime.now();
+                userSessionRepository.save(UserSession.builder()
+                    .userId(userId)
+                    .tokenHash(tokenHash)
+                    .lastSeen(touchedAt)
+                    .build());
+            }
         }
+        
+        tokens.put(userId, new Tokens(accessToken, keptRefreshToken, expiresAt, touchedAt));
+        log.debug("Stored tokens for user: {}", userId);
     }
     
     /**
      * Check if user has a valid access token
      */
     public boolean hasAccessToken(String userId) {
-        return userAccessTokens.containsKey(userId);
+        Tokens current = current(userId);
+        return current != null && current.accessToken() != null;
     }
     
     /**
      * Clear all tokens for a user (on logout)
      */
     public void clearSession(String userId) {
-        userAccessTokens.remove(userId);
-        userRefreshTokens.remove(userId);
+        tokens.invalidate(userId);
+        userSessionRepository.deleteById(userId);
+        userRepository.findBySpotifyId(userId).ifPresent(user -> {
+            user.setAccessToken(null);
+            user.setRefreshToken(null);
+            user.setTokenExpiry(null);
+            userRepository.save(user);
+        });
         log.info("Cleared session for user: {}", userId);
     }
     
@@ -85,8 +200,67 @@ public class SessionManager {
      * Clear all sessions (for testing/admin purposes)
      */
     public void clearAllSessions() {
-        userAccessTokens.clear();
-        userRefreshTokens.clear();
+        tokens.invalidateAll();
+        userSessionRepository.deleteAll();
         log.warn("Cleared all sessions");
     }
-}
\ No newline at end of file
+    
+    private Tokens current(String userId) {
+        Tokens cached = tokens.getIfPresent(userId);
+        return cached != null ? cached : load(userId);
+    }
+    
+    /**
+     * Read the user's tokens from the database into the near cache; null if there is no session
+     */
+    private Tokens load(String userId) {
+        return userSessionRepository.findById(userId).map(this::load).orElse(null);
+    }
+    
+    private Tokens load(UserSession session) {
+        String userId = session.getUserId();
+        // touchedAt starts at the stored last-seen time, so a reload never postpones the next touch
+        Tokens loaded = userRepository.findBySpotifyId(userId)
+            .filter(user -> user.getAccessToken() != null)
+            .map(user -> new Tokens(user.getAccessToken(), user.getRefreshToken(), user.getTokenExpiry(), session.getLastSeen()))
+            .orElse(null);
+        if (loaded != null) {
+            tokens.put(userId, loaded);
+        }
+        return loaded;
+    }
+    
+    /**
+     * Move the session's last-seen time forward, at most once per touch interval.
+     * Compared against the stored time, so this holds whatever the near-cache TTL is.
+     */
+    private void touch(String userId, Tokens current) {
+        LocalDateTime now = LocalDateTime.now();
+        if (current.touchedAt().plus(touchInterval).isAfter(now)) {
+            return;
+        }
+        
+        try {
+            transactionTemplate.executeWithoutResult(status -> userSessionRepository.updateLastSeen(userId, now));
+            tokens.asMap().replace(userId, current, current.withTouchedAt(now));
+        } catch (Exception e) {
+            log.warn("Could not update session of user {}: {}", userId, e.getMessage());
+        }
+    }
+    
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private record Tokens(String accessToken, String refreshToken, LocalDateTime expiresAt, LocalDateTime touchedAt) {
+        
+        Tokens withTouchedAt(LocalDateTime time) {
+            return new Tokens(accessToken, refreshToken, expiresAt, time);
+        }
+    }
+}
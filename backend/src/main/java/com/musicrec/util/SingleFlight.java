@@ -0,0 +1,61 @@
+package com.musicrec.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Request coalescing: concurrent callers asking for the same key share one
+ * in-flight call and its result. The entry is dropped as soon as the call
+ * finishes, so this never serves stale data - caching is a separate concern.
+ */
+@Component
+public class SingleFlight {
+    
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final Counter joined;
+    
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.joined = Counter.builder("singleflight.joined")
+            .description("Calls that reused an identical in-flight request")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Run the call for this key, or join the one already running
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Mono<T> existing = (Mono<T>) inFlight.get(key);
+            if (existing != null) {
+                joined.increment();
+                return existing;
+            }
+            
+            AtomicReference<Mono<T>> self = new AtomicReference<>();
+            // cache() keeps the upstream running even if the first caller cancels
+            Mono<T> shared = call.get()
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .cache();
+            self.set(shared);
+            
+            Mono<T> raced = (Mono<T>) inFlight.putIfAbsent(key, shared);
+            if (raced != null) {
+                joined.increment();
+                return raced;
+            }
+            return shared;
+        });
+    }
+    
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
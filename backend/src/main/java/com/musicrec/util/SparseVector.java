@@ -0,0 +1,130 @@
+package com.musicrec.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable sparse vector over interned tag ids. Indices are sorted and
+ * distinct, values are kept in a parallel float array and the L2 norm is
+ * computed once, so dot products and cosines are a single merge over two
+ * pairs of primitive arrays without any allocation.
+ */
+public final class SparseVector {
+    
+    public static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+    
+    private final int[] indices;
+    private final float[] values;
+    private final float norm;
+    
+    private SparseVector(int[] indices, float[] values) {
+        this.indices = indices;
+        this.values = values;
+        double sum = 0;
+        for (float v : values) {
+            sum += (double) v * v;
+        }
+        this.norm = (float) Math.sqrt(sum);
+    }
+    
+    /**
+     * Binary vector with a 1 at each id; duplicates count once
+     */
+    public static SparseVector ofIds(int[] ids) {
+        if (ids.length == 0) {
+            return EMPTY;
+        }
+        
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[n - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        
+        float[] ones = new float[n];
+        Arrays.fill(ones, 1f);
+        return new SparseVector(Arrays.copyOf(sorted, n), ones);
+    }
+    
+    /**
+     * Element-wise sum, e.g. a taste profile from the vectors of liked tracks
+     */
+    public static SparseVector sum(List<SparseVector> vectors) {
+        int total = 0;
+        for (SparseVector vector : vectors) {
+            total += vector.size();
+        }
+        if (total == 0) {
+            return EMPTY;
+        }
+        
+        // Pack (index, value bits) into longs so one primitive sort groups equal indices
+        long[] entries = new long[total];
+        int k = 0;
+        for (SparseVector vector : vectors) {
+            for (int i = 0; i < vector.indices.length; i++) {
+                entries[k++] = ((long) vector.indices[i] << 32) | (Float.floatToRawIntBits(vector.values[i]) & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(entries);
+        
+        int[] indices = new int[total];
+        float[] values = new float[total];
+        int n = -1;
+        for (long entry : entries) {
+            int index = (int) (entry >>> 32);
+            float value = Float.intBitsToFloat((int) entry);
+            if (n >= 0 && indices[n] == index) {
+                values[n] += value;
+            } else {
+                n++;
+                indices[n] = index;
+                values[n] = value;
+            }
+        }
+        return new SparseVector(Arrays.copyOf(indices, n + 1), Arrays.copyOf(values, n + 1));
+    }
+    
+    public int size() {
+        return indices.length;
+    }
+    
+    public boolean isEmpty() {
+        return indices.length == 0;
+    }
+    
+    public float norm() {
+        return norm;
+    }
+    
+    public float dot(SparseVector other) {
+        int[] a = indices;
+        int[] b = other.indices;
+        float sum = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                sum += values[i++] * other.values[j++];
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+    
+    /**
+     * Cosine similarity in [0, 1] for non-negative vectors; 0 if either is empty
+     */
+    public float cosine(SparseVector other) {
+        if (norm == 0 || other.norm == 0) {
+            return 0f;
+        }
+        return dot(other) / (norm * other.norm);
+    }
+}
@@ -0,0 +1,65 @@
+package com.musicrec.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns genres/tags to dense int ids and turns comma-joined tag strings into
+ * {@link SparseVector}s. Parsed vectors are memoized per raw string, so the same
+ * "rock, indie rock" from the catalog or Last.fm is only split once.
+ */
+@Component
+public class TagVocabulary {
+    
+    private static final int MAX_PARSED = 50_000;
+    
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Cache<String, SparseVector> parsed = Caffeine.newBuilder()
+        .maximumSize(MAX_PARSED)
+        .build();
+    
+    /**
+     * Id of the normalized tag, assigned on first sight; -1 for a blank tag
+     */
+    public int idOf(String tag) {
+        String normalized = StringUtil.normalize(tag);
+        if (normalized.isEmpty()) {
+            return -1;
+        }
+        return ids.computeIfAbsent(normalized, key -> nextId.getAndIncrement());
+    }
+    
+    /**
+     * Binary tag vector for a comma-joined tag string
+     */
+    public SparseVector vectorOf(String tags) {
+        if (tags == null || tags.isBlank()) {
+            return SparseVector.EMPTY;
+        }
+        return parsed.get(tags, this::parse);
+    }
+    
+    public int size() {
+        return ids.size();
+    }
+    
+    private SparseVector parse(String tags) {
+        String[] parts = tags.split(",");
+        int[] tagIds = new int[parts.length];
+        int n = 0;
+        for (String part : parts) {
+            int id = idOf(part);
+            if (id >= 0) {
+                tagIds[n++] = id;
+            }
+        }
+        return SparseVector.ofIds(n == parts.length ? tagIds : Arrays.copyOf(tagIds, n));
+    }
+}
@@ -0,0 +1,147 @@
+package com.musicrec.service;
+
+import com.musicrec.util.HnswIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HnswIndex over 1M vectors with the dimensions and graph settings of
+ * app.recommendation.ann. Recall@10 is measured against a brute-force scan for
+ * a sample of queries; the test fails when recall drops below 0.9 or p99 query
+ * latency reaches 10 ms. Vectors are drawn around cluster centres, as tag
+ * embeddings of related tracks are, rather than uniformly.
+ *
+ * Skipped by default as it takes minutes and about 1 GB of heap; run with
+ * mvn test -Dtest=HnswIndexBenchmarkTest -Dbenchmarks=true
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+@Slf4j
+class HnswIndexBenchmarkTest {
+    
+    private static final int VECTORS = 1_000_000;
+    private static final int DIM = 32;
+    private static final int M = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final int CLUSTERS = 2_000;
+    private static final float SPREAD = 0.1f;
+    private static final int K = 10;
+    private static final int QUERIES = 1_000;
+    
+    private final SplittableRandom random = new SplittableRandom(7);
+    
+    @Test
+    void recallAndLatencyAtOneMillion() {
+        float[][] centres = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centres[c] = normalize(gaussian(1));
+        }
+        
+        long started = System.nanoTime();
+        HnswIndex index = new HnswIndex(DIM, M, EF_CONSTRUCTION);
+        for (int i = 0; i < VECTORS; i++) {
+            index.add(near(centres[random.nextInt(CLUSTERS)]));
+        }
+        long buildMillis = (System.nanoTime() - started) / 1_000_000;
+        log.info("Built index over {} vectors in {} ms ({} inserts/s)",
+            VECTORS, buildMillis, VECTORS * 1_000L / Math.max(1, buildMillis));
+        
+        float[][] queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = near(centres[random.nextInt(CLUSTERS)]);
+        }
+        
+        // Warm up the search path before timing it
+        for (float[] query : queries) {
+            index.search(query, K, EF_SEARCH);
+        }
+        
+        long[] nanos = new long[QUERIES];
+        int hits = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            long start = System.nanoTime();
+            int[] found = index.search(queries[q], K, EF_SEARCH);
+            nanos[q] = System.nanoTime() - start;
+            
+            int[] exact = exactNearest(index, queries[q]);
+            for (int node : found) {
+                for (int expected : exact) {
+                    if (node == expected) {
+                        hits++;
+                        break;
+                    }
+                }
+            }
+        }
+        Arrays.sort(nanos);
+        
+        double recall = (double) hits / (QUERIES * K);
+        double p50 = nanos[QUERIES / 2] / 1e6;
+        double p99 = nanos[QUERIES * 99 / 100] / 1e6;
+        log.info("Recall@{} {}, query p50 {} ms, p99 {} ms (ef {})",
+            K, String.format("%.3f", recall), String.format("%.3f", p50), String.format("%.3f", p99), EF_SEARCH);
+        assertTrue(recall >= 0.9, "recall@" + K + " " + recall);
+        assertTrue(p99 < 10, "p99 query latency " + p99 + " ms");
+    }
+    
+    /**
+     * Brute-force k nearest by dot product, the exact answer the index approximates
+     */
+    private static int[] exactNearest(HnswIndex index, float[] query) {
+        int[] best = new int[K];
+        float[] bestSimilarity = new float[K];
+        Arrays.fill(bestSimilarity, Float.NEGATIVE_INFINITY);
+        for (int node = 0; node < index.size(); node++) {
+            float similarity = index.similarity(node, query);
+            if (similarity <= bestSimilarity[K - 1]) {
+                continue;
+            }
+            int i = K - 1;
+            while (i > 0 && bestSimilarity[i - 1] < similarity) {
+                bestSimilarity[i] = bestSimilarity[i - 1];
+                best[i] = best[i - 1];
+                i--;
+            }
+            bestSimilarity[i] = similarity;
+            best[i] = node;
+        }
+        return best;
+    }
+    
+    private float[] near(float[] centre) {
+        float[] noise = gaussian(SPREAD);
+        for (int d = 0; d < DIM; d++) {
+            noise[d] += centre[d];
+        }
+        return normalize(noise);
+    }
+    
+    private float[] gaussian(float scale) {
+        float[] vector = new float[DIM];
+        for (int d = 0; d < DIM; d++) {
+            // Box-Muller; SplittableRandom has no nextGaussian
+            double u = 1 - random.nextDouble();
+            double v = random.nextDouble();
+            vector[d] = (float) (Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v) * scale);
+        }
+        return vector;
+    }
+    
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] *= inverse;
+        }
+        return vector;
+    }
+}
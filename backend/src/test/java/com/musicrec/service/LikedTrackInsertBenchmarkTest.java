@@ -0,0 +1,146 @@
+package com.musicrec.service;
+
+import com.musicrec.entity.Track;
+import com.musicrec.repository.TrackRepository;
+import com.musicrec.util.SessionManager;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Inserting a liked-track library row by row versus through MusicService.saveInChunks
+ * (JDBC batches of hibernate.jdbc.batch_size, flushed and cleared every chunk), on an
+ * H2 file database in a temporary directory like the one the app runs on. Rows per
+ * second are logged; the assertions only check that every row landed.
+ *
+ * Skipped by default as it takes a while; run with
+ * mvn test -Dtest=LikedTrackInsertBenchmarkTest -Dbenchmarks=true
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+    "spring.jpa.properties.hibernate.order_inserts=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(MusicService.class)
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+@Slf4j
+class LikedTrackInsertBenchmarkTest {
+    
+    private static final int WARM_UP_ROWS = 500;
+    private static final Path DATA_DIR = createDataDir();
+    
+    @DynamicPropertySource
+    static void fileDatabase(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:h2:file:" + DATA_DIR.resolve("musicdb").toAbsolutePath());
+    }
+    
+    @Autowired
+    private MusicService musicService;
+    
+    @Autowired
+    private TrackRepository trackRepository;
+    
+    @Autowired
+    private EntityManager entityManager;
+    
+    @MockBean
+    private SpotifyService spotifyService;
+    
+    @MockBean
+    private RecommendationReranker reranker;
+    
+    @MockBean
+    private TasteProfileService tasteProfiles;
+    
+    @MockBean
+    private StatsService statsService;
+    
+    @MockBean
+    private SessionManager sessionManager;
+    
+    @ParameterizedTest
+    @ValueSource(ints = {1_000, 10_000, 50_000})
+    void insertLikedTracks(int rows) {
+        // Warm up both paths so the first size does not pay for class loading and JIT
+        insertOneByOne(tracks("warm-up-single", WARM_UP_ROWS));
+        musicService.saveInChunks(tracks("warm-up-chunked", WARM_UP_ROWS));
+        
+        long start = System.nanoTime();
+        insertOneByOne(tracks("single", rows));
+        long singleMillis = (System.nanoTime() - start) / 1_000_000;
+        
+        start = System.nanoTime();
+        int saved = musicService.saveInChunks(tracks("chunked", rows));
+        long chunkedMillis = (System.nanoTime() - start) / 1_000_000;
+        
+        log.info("{} rows: one by one {} ms ({} rows/s), saveInChunks {} ms ({} rows/s)",
+            rows, singleMillis, rowsPerSecond(rows, singleMillis), chunkedMillis, rowsPerSecond(rows, chunkedMillis));
+        
+        assertEquals(rows, saved);
+        assertEquals(rows, trackRepository.countByUserIdAndSource("chunked", "spotify_liked"));
+        assertEquals(rows, trackRepository.countByUserIdAndSource("single", "spotify_liked"));
+    }
+    
+    /**
+     * What expand did before batching: one INSERT round trip per liked song
+     */
+    private void insertOneByOne(List<Track> tracks) {
+        for (Track track : tracks) {
+            trackRepository.save(track);
+            entityManager.flush();
+        }
+        entityManager.clear();
+    }
+    
+    private static long rowsPerSecond(int rows, long millis) {
+        return rows * 1000L / Math.max(1, millis);
+    }
+    
+    private static Path createDataDir() {
+        try {
+            return Files.createTempDirectory("liked-track-benchmark");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static List<Track> tracks(String userId, int count) {
+        List<Track> tracks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Track track = new Track();
+            track.setUserId(userId);
+            track.setSpotifyId(userId + "-" + i);
+            track.setTrackName("Track " + i);
+            track.setArtist("Artist " + (i % 500));
+            track.setArtistId("artist-" + (i % 500));
+            track.setAlbum("Album " + (i % 2000));
+            track.setYear(String.valueOf(1970 + i % 50));
+            track.setTags("");
+            track.setSource("spotify_liked");
+            track.setAddedAt(LocalDateTime.now().minusMinutes(i));
+            track.setCreatedAt(LocalDateTime.now());
+            tracks.add(track);
+        }
+        return tracks;
+    }
+}
@@ -0,0 +1,109 @@
+package com.musicrec.service;
+
+import com.musicrec.dto.TrackDto;
+import com.musicrec.entity.Feedback;
+import com.musicrec.entity.Track;
+import com.musicrec.repository.FeedbackRepository;
+import com.musicrec.repository.TrackRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Scoring and sorting 1k candidates with a trained per-user model, the work
+ * RecommendationReranker adds to a recommendation request. Latency percentiles
+ * are logged; the test fails when p99 reaches 5 ms.
+ *
+ * Skipped by default; run with
+ * mvn test -Dtest=RecommendationRerankerBenchmarkTest -Dbenchmarks=true
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+@Slf4j
+class RecommendationRerankerBenchmarkTest {
+    
+    private static final String USER_ID = "benchmark-user";
+    private static final int FEEDBACK_ROWS = 200;
+    private static final int CANDIDATES = 1_000;
+    private static final int WARM_UP = 5_000;
+    private static final int ITERATIONS = 2_000;
+    
+    private final Random random = new Random(42);
+    
+    @Test
+    void rerankThousandCandidates() {
+        List<Track> tracks = new ArrayList<>();
+        List<Feedback> feedback = new ArrayList<>();
+        for (long id = 1; id <= FEEDBACK_ROWS; id++) {
+            Track track = track(id);
+            tracks.add(track);
+            // Likes lean towards the even artists so the model has something to learn
+            boolean like = random.nextDouble() < (track.getArtist().hashCode() % 2 == 0 ? 0.8 : 0.2);
+            feedback.add(new Feedback(id, USER_ID, id, like ? "like" : "dislike", LocalDateTime.now(), null));
+        }
+        
+        FeedbackRepository feedbackRepository = mock(FeedbackRepository.class);
+        TrackRepository trackRepository = mock(TrackRepository.class);
+        when(feedbackRepository.findByUserId(USER_ID)).thenReturn(feedback);
+        when(trackRepository.findAllById(any())).thenReturn(tracks);
+        RecommendationReranker reranker = new RecommendationReranker(
+            feedbackRepository, trackRepository, new SimpleMeterRegistry(), 20, 0.1, 10);
+        
+        List<TrackDto> candidates = new ArrayList<>();
+        for (long id = 1; id <= CANDIDATES; id++) {
+            Track track = track(FEEDBACK_ROWS + id);
+            candidates.add(TrackDto.builder()
+                .id(track.getId())
+                .trackName(track.getTrackName())
+                .artist(track.getArtist())
+                .source(track.getSource())
+                .artistSeed(track.getArtistSeed())
+                .genreSeed(track.getGenreSeed())
+                .tags(track.getTags())
+                .build());
+        }
+        
+        // The first call trains the model, which is not part of the per-request cost
+        assertNotSame(candidates, reranker.rerank(USER_ID, candidates));
+        for (int i = 0; i < WARM_UP; i++) {
+            reranker.rerank(USER_ID, candidates);
+        }
+        
+        long[] nanos = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            reranker.rerank(USER_ID, candidates);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        
+        double p50 = nanos[ITERATIONS / 2] / 1e6;
+        double p99 = nanos[ITERATIONS * 99 / 100] / 1e6;
+        log.info("Re-ranking {} candidates: p50 {} ms, p99 {} ms",
+            CANDIDATES, String.format("%.3f", p50), String.format("%.3f", p99));
+        assertTrue(p99 < 5, "p99 re-rank latency " + p99 + " ms");
+    }
+    
+    private Track track(long id) {
+        String artist = "artist " + random.nextInt(100);
+        Track track = new Track();
+        track.setId(id);
+        track.setUserId(USER_ID);
+        track.setTrackName("track " + id);
+        track.setArtist(artist);
+        track.setSource(random.nextBoolean() ? "artist_similarity" : "genre_similarity");
+        track.setArtistSeed("seed " + random.nextInt(20));
+        track.setGenreSeed("genre " + random.nextInt(10));
+        track.setTags("tag " + random.nextInt(50) + ",tag " + random.nextInt(50) + ",tag " + random.nextInt(50));
+        return track;
+    }
+}
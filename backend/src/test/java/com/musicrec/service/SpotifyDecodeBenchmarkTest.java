@@ -0,0 +1,144 @@
+package com.musicrec.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.musicrec.dto.SpotifyArtistsResponse;
+import com.musicrec.dto.SpotifySavedTracksPage;
+import com.musicrec.dto.SpotifyTrackDto;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Decoding a 50-item /me/tracks page and a 50-artist /artists batch into the typed
+ * records SpotifyService uses, versus the Map tree plus unchecked casts it used before.
+ * Time and allocated bytes per decode are logged; the assertions only check that
+ * both paths read the same values.
+ *
+ * Skipped by default; run with
+ * mvn test -Dtest=SpotifyDecodeBenchmarkTest -Dbenchmarks=true
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+@Slf4j
+class SpotifyDecodeBenchmarkTest {
+    
+    private static final int WARM_UP = 2_000;
+    private static final int ITERATIONS = 20_000;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Test
+    void savedTracksPage() throws IOException {
+        byte[] json = resource("/spotify/saved-tracks-page.json");
+        assertEquals(fromMap(json), fromRecords(json));
+        
+        measure("/me/tracks page", "Map", () -> fromMap(json));
+        measure("/me/tracks page", "records", () -> fromRecords(json));
+    }
+    
+    @Test
+    void artistsBatch() throws IOException {
+        byte[] json = resource("/spotify/artists.json");
+        assertEquals(genresFromMap(json), genresFromRecords(json));
+        
+        measure("/artists batch", "Map", () -> genresFromMap(json));
+        measure("/artists batch", "records", () -> genresFromRecords(json));
+    }
+    
+    private void measure(String payload, String path, Decode decode) throws IOException {
+        for (int i = 0; i < WARM_UP; i++) {
+            decode.run();
+        }
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        
+        log.info("{} via {}: {} µs and {} KB allocated per decode, {} decodes/s",
+            payload, path, nanos / ITERATIONS / 1_000, allocated / ITERATIONS / 1_024,
+            ITERATIONS * 1_000_000_000L / Math.max(1, nanos));
+    }
+    
+    private List<SpotifyTrackDto> fromRecords(byte[] json) throws IOException {
+        SpotifySavedTracksPage page = objectMapper.readValue(json, SpotifySavedTracksPage.class);
+        List<SpotifyTrackDto> rows = new ArrayList<>();
+        for (SpotifySavedTracksPage.Item item : page.items()) {
+            SpotifySavedTracksPage.Track track = item.track();
+            SpotifyTrackDto row = new SpotifyTrackDto();
+            row.setSpotifyId(track.id());
+            row.setTrackName(track.name());
+            row.setArtist(track.artists().get(0).name());
+            row.setArtistId(track.artists().get(0).id());
+            row.setAlbum(track.album().name());
+            row.setYear(track.album().releaseDate().substring(0, 4));
+            row.setAlbumImage(track.album().images().get(0).url());
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    /**
+     * The decode SpotifyService did before the typed records
+     */
+    @SuppressWarnings("unchecked")
+    private List<SpotifyTrackDto> fromMap(byte[] json) throws IOException {
+        Map<String, Object> page = objectMapper.readValue(json, Map.class);
+        List<SpotifyTrackDto> rows = new ArrayList<>();
+        for (Map<String, Object> item : (List<Map<String, Object>>) page.get("items")) {
+            Map<String, Object> track = (Map<String, Object>) item.get("track");
+            Map<String, Object> artist = ((List<Map<String, Object>>) track.get("artists")).get(0);
+            Map<String, Object> album = (Map<String, Object>) track.get("album");
+            SpotifyTrackDto row = new SpotifyTrackDto();
+            row.setSpotifyId((String) track.get("id"));
+            row.setTrackName((String) track.get("name"));
+            row.setArtist((String) artist.get("name"));
+            row.setArtistId((String) artist.get("id"));
+            row.setAlbum((String) album.get("name"));
+            row.setYear(((String) album.get("release_date")).substring(0, 4));
+            row.setAlbumImage((String) ((List<Map<String, Object>>) album.get("images")).get(0).get("url"));
+            rows.add(row);
+        }
+        return rows;
+    }
+    
+    private Map<String, List<String>> genresFromRecords(byte[] json) throws IOException {
+        Map<String, List<String>> genres = new HashMap<>();
+        for (SpotifyArtistsResponse.Artist artist : objectMapper.readValue(json, SpotifyArtistsResponse.class).artists()) {
+            genres.put(artist.id(), artist.genres());
+        }
+        return genres;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<String, List<String>> genresFromMap(byte[] json) throws IOException {
+        Map<String, List<String>> genres = new HashMap<>();
+        Map<String, Object> response = objectMapper.readValue(json, Map.class);
+        for (Map<String, Object> artist : (List<Map<String, Object>>) response.get("artists")) {
+            genres.put((String) artist.get("id"), (List<String>) artist.get("genres"));
+        }
+        return genres;
+    }
+    
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = SpotifyDecodeBenchmarkTest.class.getResourceAsStream(name)) {
+            return Objects.requireNonNull(in, name).readAllBytes();
+        }
+    }
+    
+    @FunctionalInterface
+    private interface Decode {
+        Object run() throws IOException;
+    }
+}